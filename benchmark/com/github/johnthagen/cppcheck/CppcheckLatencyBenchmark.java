@@ -0,0 +1,199 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+// runs the fake-cppcheck script through the same path as the on-the-fly analysis (process limiter, watchdog with timeout
+// and cancellation, streaming parser) and checks the outcome of each scenario - the latency of the stages of every run
+// is printed. Runs as test within the IDE test framework on Linux and macOS.
+// -Dfake.cppcheck=<path> overrides the location of the script, -Dfake.cppcheck.runs=<n> the runs per scenario
+public class CppcheckLatencyBenchmark extends BasePlatformTestCase {
+    private static final long TIMEOUT_MS = 30 * 1000;
+    // the time a killed process may take until the execution returns
+    private static final long KILL_MS = 5 * 1000;
+
+    private static class Run {
+        long firstFindingNanos;
+        long totalNanos;
+        int findings;
+        // null if the execution succeeded
+        Throwable error;
+        final CppcheckMetrics.Execution execution = new CppcheckMetrics.Execution();
+    }
+
+    private File fakeCppcheck;
+    private File source;
+    private VirtualFile vFile;
+    private int runs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        fakeCppcheck = new File(System.getProperty("fake.cppcheck", "benchmark/fake-cppcheck")).getAbsoluteFile();
+        assertTrue("fake-cppcheck not found at " + fakeCppcheck, fakeCppcheck.isFile());
+        runs = Integer.getInteger("fake.cppcheck.runs", 5);
+
+        source = FileUtil.createTempFile("fake_cppcheck_", ".cpp", true);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            sb.append("int f").append(i).append("() { return ").append(i).append("; }\n");
+        }
+        FileUtil.writeToFile(source, sb.toString());
+        vFile = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(source);
+        assertNotNull(vFile);
+
+        // compiles the fake executable if necessary so the measured latency does not include the compilation
+        final Run warmup = execute(false, TIMEOUT_MS, null, Collections.singletonList("--fake-findings=1"));
+        assertNull(warmup.error);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            FileUtil.delete(source);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testSmall() {
+        measure("small", false, TIMEOUT_MS, null, run -> {
+            assertNull(run.error);
+            assertEquals(5, run.findings);
+        }, "--fake-findings=5");
+    }
+
+    public void testStreaming() {
+        measure("streaming", false, TIMEOUT_MS, null, run -> {
+            assertNull(run.error);
+            assertEquals(20, run.findings);
+            // the first finding is parsed while the process is still writing the others
+            assertTrue(run.firstFindingNanos < run.totalNanos / 2);
+        }, "--fake-findings=20", "--fake-delay-ms=50");
+    }
+
+    public void testSlowStartup() {
+        measure("slow startup", false, TIMEOUT_MS, null, run -> {
+            assertNull(run.error);
+            assertEquals(5, run.findings);
+            assertTrue(run.firstFindingNanos >= 1000 * 1_000_000L);
+        }, "--fake-startup-ms=1000", "--fake-findings=5");
+    }
+
+    public void testHugeOutput() {
+        measure("huge output", false, TIMEOUT_MS, null, run -> {
+            assertNull(run.error);
+            assertEquals(50000, run.findings);
+            assertTrue(run.execution.outputBytes > 0);
+        }, "--fake-findings=50000", "--fake-locations=3");
+    }
+
+    public void testExitCode() {
+        measure("exit code", false, TIMEOUT_MS, null, run -> {
+            assertInstanceOf(run.error, CppcheckError.class);
+            assertTrue(run.error.getMessage().startsWith("Exit Code 1"));
+        }, "--fake-findings=5", "--fake-exit-code=1");
+    }
+
+    public void testInvalidXml() {
+        measure("invalid xml", false, TIMEOUT_MS, null, run -> {
+            assertInstanceOf(run.error, XMLStreamException.class);
+            // the findings before the broken one are still reported
+            assertEquals(5, run.findings);
+        }, "--fake-findings=10", "--fake-invalid-xml");
+    }
+
+    public void testMisraBail() {
+        measure("MISRA bail", false, TIMEOUT_MS, "misra.json", run -> {
+            assertInstanceOf(run.error, CppcheckError.class);
+            assertTrue(run.error.getMessage().startsWith("MISRA Bail"));
+        }, "--fake-findings=5", "--fake-misra-bail");
+    }
+
+    public void testCancel() {
+        measure("cancel", true, TIMEOUT_MS, null, run -> {
+            assertInstanceOf(run.error, ProcessCanceledException.class);
+            assertTrue(run.findings >= 1);
+            assertTrue(run.totalNanos - run.firstFindingNanos < KILL_MS * 1_000_000L);
+        }, "--fake-findings=20", "--fake-delay-ms=100", "--fake-hang");
+    }
+
+    public void testTimeout() {
+        final long timeoutMs = 1000;
+        measure("timeout", false, timeoutMs, null, run -> {
+            assertInstanceOf(run.error, CppcheckError.class);
+            assertTrue(((CppcheckError)run.error).timeout);
+            assertEquals(5, run.findings);
+            assertTrue(run.totalNanos < (timeoutMs + KILL_MS) * 1_000_000L);
+        }, "--fake-findings=5", "--fake-hang");
+    }
+
+    private void measure(@NotNull final String name,
+                         final boolean cancelAfterFirstFinding,
+                         final long timeoutMs,
+                         @Nullable final String misraPath,
+                         @NotNull final Consumer<Run> check,
+                         @NotNull final String... options) {
+        System.out.printf("%-14s %10s %12s %10s %8s  %s%n", "scenario", "spawn (ms)", "first (ms)", "total (ms)", "findings", "result");
+        for (int i = 0; i < runs; ++i) {
+            final Run run = execute(cancelAfterFirstFinding, timeoutMs, misraPath, Arrays.asList(options));
+            System.out.printf("%-14s %10.1f %12.1f %10.1f %8d  %s%n",
+                    name,
+                    toMillis(run.execution.spawnNanos),
+                    run.firstFindingNanos != 0 ? toMillis(run.firstFindingNanos) : Double.NaN,
+                    toMillis(run.totalNanos),
+                    run.findings,
+                    run.error != null ? run.error.getClass().getSimpleName() : "ok");
+            check.accept(run);
+        }
+    }
+
+    @NotNull
+    private Run execute(final boolean cancelAfterFirstFinding,
+                        final long timeoutMs,
+                        @Nullable final String misraPath,
+                        @NotNull final List<String> options) {
+        final List<String> parameters = new ArrayList<>(options);
+        parameters.add("--xml");
+        final CppCheckInspectionImpl inspectionImpl = new CppCheckInspectionImpl(0, new CppcheckSuppressions.Matcher(Collections.emptyList()));
+        // an edit of the document cancels the indicator just like this
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+
+        final Run run = new Run();
+        final long start = System.nanoTime();
+        try {
+            inspectionImpl.executeCommandOnFile(vFile, fakeCppcheck, new CppcheckCommandLine(parameters), source, misraPath,
+                    timeoutMs, CppcheckProcessLimiter.Priority.FOCUSED, indicator, null, run.execution, finding -> {
+                        if (run.findings++ == 0) {
+                            run.firstFindingNanos = System.nanoTime() - start;
+                            if (cancelAfterFirstFinding) {
+                                indicator.cancel();
+                            }
+                        }
+                    });
+        } catch (final Throwable t) {
+            run.error = t;
+        }
+        run.totalNanos = System.nanoTime() - start;
+        return run;
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
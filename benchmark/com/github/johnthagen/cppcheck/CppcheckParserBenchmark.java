@@ -0,0 +1,199 @@
+package com.github.johnthagen.cppcheck;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// measures the parsing of the --xml output including the suppressions and the assignment of the findings to the files
+// of a batch analysis on a generated corpus - runs without the IDE (only the jars of the SDK are needed)
+// usage: CppcheckParserBenchmark [seconds per scenario] [scenario name filter]
+class CppcheckParserBenchmark {
+    private static final int WARMUP_SECONDS = 2;
+    private static final String[] SEVERITIES = {"error", "warning", "style", "performance", "portability", "information"};
+    private static final List<String> SUPPRESSIONS = Arrays.asList(
+            "misra-c2012-2.*",
+            "constParameter",
+            "unusedVariable:*/third_party/*",
+            "uninitvar:src/module_3.cpp:120",
+            "severity=information",
+            "message=.*deprecated.*");
+
+    private static class Scenario {
+        Scenario(@NotNull final String name, @NotNull final byte[] output) {
+            this.name = name;
+            this.output = output;
+        }
+
+        final String name;
+        final byte[] output;
+    }
+
+    private static class Stats {
+        long operations;
+        long findings;
+        long allocatedBytes;
+        long[] latencies;
+    }
+
+    public static void main(final String[] args) throws XMLStreamException {
+        final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        final String filter = args.length > 1 ? args[1] : "";
+
+        final List<Scenario> scenarios = new ArrayList<>();
+        final Random random = new Random(42);
+        scenarios.add(new Scenario("small file", generate(random, 5, 1, 1, 1)));
+        scenarios.add(new Scenario("MISRA 10k findings", generateMisra(random, 10 * 1000)));
+        scenarios.add(new Scenario("multi-location", generate(random, 2000, 5, 10, 20)));
+        scenarios.add(new Scenario("header-heavy", generate(random, 5000, 1, 3, 200)));
+
+        final Map<String, CppcheckSuppressions.Matcher> matchers = new LinkedHashMap<>();
+        matchers.put("builtin", new CppcheckSuppressions.Matcher(Collections.emptyList()));
+        matchers.put("suppressions", new CppcheckSuppressions.Matcher(SUPPRESSIONS));
+
+        System.out.printf("%-20s %-12s %10s %12s %14s %10s %10s %14s%n",
+                "scenario", "matcher", "size (KB)", "ops/s", "findings/s", "p50 (ms)", "p99 (ms)", "alloc/op (KB)");
+        for (final Scenario scenario : scenarios) {
+            if (!scenario.name.contains(filter)) {
+                continue;
+            }
+            for (final Map.Entry<String, CppcheckSuppressions.Matcher> matcher : matchers.entrySet()) {
+                final CppCheckInspectionImpl inspectionImpl = new CppCheckInspectionImpl(0, matcher.getValue());
+                run(inspectionImpl, scenario, WARMUP_SECONDS);
+                final Stats stats = run(inspectionImpl, scenario, seconds);
+                Arrays.sort(stats.latencies);
+                System.out.printf("%-20s %-12s %10d %12.1f %14.0f %10.3f %10.3f %14.1f%n",
+                        scenario.name,
+                        matcher.getKey(),
+                        scenario.output.length / 1024,
+                        stats.operations / (double)seconds,
+                        stats.findings / (double)seconds,
+                        percentile(stats.latencies, 50) / 1_000_000.0,
+                        percentile(stats.latencies, 99) / 1_000_000.0,
+                        stats.allocatedBytes / (double)stats.operations / 1024);
+            }
+        }
+    }
+
+    // parses the output over and over again for the given duration
+    @NotNull
+    private static Stats run(@NotNull final CppCheckInspectionImpl inspectionImpl,
+                             @NotNull final Scenario scenario,
+                             final int seconds) throws XMLStreamException {
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        final Stats stats = new Stats();
+        final List<Long> latencies = new ArrayList<>();
+        final long[] findings = {0};
+        final long end = System.nanoTime() + seconds * 1_000_000_000L;
+        final long allocatedStart = threadBean.getThreadAllocatedBytes(threadId);
+        while (System.nanoTime() < end) {
+            final long start = System.nanoTime();
+            // the same work as the batch analysis performs for each finding
+            inspectionImpl.parseOutput(new ByteArrayInputStream(scenario.output), finding -> {
+                CppcheckRunner.normalizePath(finding.locations.get(0).file);
+                ++findings[0];
+            });
+            latencies.add(System.nanoTime() - start);
+        }
+        stats.allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedStart;
+        stats.operations = latencies.size();
+        stats.findings = findings[0];
+        stats.latencies = new long[latencies.size()];
+        for (int i = 0; i < latencies.size(); ++i) {
+            stats.latencies[i] = latencies.get(i);
+        }
+        return stats;
+    }
+
+    // findings with locations spread over the given number of files - the first one is the source file
+    @NotNull
+    private static byte[] generate(@NotNull final Random random,
+                                   final int count,
+                                   final int minLocations,
+                                   final int maxLocations,
+                                   final int files) {
+        final StringBuilder sb = new StringBuilder();
+        appendHeader(sb);
+        for (int i = 0; i < count; ++i) {
+            final String id = i % 7 == 0 ? "unusedVariable" : i % 5 == 0 ? "constParameter" : "nullPointer" + (i % 40);
+            final String severity = SEVERITIES[random.nextInt(SEVERITIES.length)];
+            final String msg = i % 11 == 0 ? "Use of deprecated function &apos;f" + i + "&apos;." :
+                    "Possible null pointer dereference: p" + i + " (see &lt;details&gt;)";
+            sb.append("        <error id=\"").append(id).append("\" severity=\"").append(severity)
+                    .append("\" msg=\"").append(msg).append("\" verbose=\"").append(msg).append(" Verbose.\" cwe=\"476\" file0=\"")
+                    .append(getPath(0)).append("\"").append(i % 3 == 0 ? " inconclusive=\"true\"" : "").append(">\n");
+            final int locations = minLocations + random.nextInt(maxLocations - minLocations + 1);
+            for (int j = 0; j < locations; ++j) {
+                final int file = files > 1 && (j > 0 || random.nextBoolean()) ? random.nextInt(files) : 0;
+                sb.append("            <location file=\"").append(getPath(file)).append("\" line=\"").append(1 + random.nextInt(5000))
+                        .append("\" column=\"").append(1 + random.nextInt(80)).append("\"");
+                if (j > 0) {
+                    sb.append(" info=\"Assignment &apos;p").append(i).append("=nullptr&apos;, assigned value is 0\"");
+                }
+                sb.append("/>\n");
+            }
+            sb.append("            <symbol>p").append(i).append("</symbol>\n");
+            sb.append("        </error>\n");
+        }
+        appendFooter(sb);
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // the output of the MISRA addon - short messages with a single location each
+    @NotNull
+    private static byte[] generateMisra(@NotNull final Random random, final int count) {
+        final StringBuilder sb = new StringBuilder();
+        appendHeader(sb);
+        for (int i = 0; i < count; ++i) {
+            final String rule = (1 + random.nextInt(22)) + "." + (1 + random.nextInt(10));
+            sb.append("        <error id=\"misra-c2012-").append(rule).append("\" severity=\"style\" msg=\"misra violation (use --rule-texts=&lt;file&gt; to get proper output)\" verbose=\"misra violation\" file0=\"")
+                    .append(getPath(0)).append("\">\n");
+            sb.append("            <location file=\"").append(getPath(0)).append("\" line=\"").append(1 + random.nextInt(20000))
+                    .append("\" column=\"").append(1 + random.nextInt(80)).append("\"/>\n");
+            sb.append("        </error>\n");
+        }
+        appendFooter(sb);
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private static String getPath(final int file) {
+        if (file == 0) {
+            return "/home/user/project/src/module_3.cpp";
+        }
+        // relative includes are not normalized by Cppcheck
+        return file % 4 == 0 ? "/home/user/project/third_party/lib/header_" + file + ".h" :
+                "/home/user/project/src/../include/header_" + file + ".h";
+    }
+
+    private static void appendHeader(@NotNull final StringBuilder sb) {
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<results version=\"2\">\n");
+        sb.append("    <cppcheck version=\"2.13.0\"/>\n");
+        sb.append("    <errors>\n");
+    }
+
+    private static void appendFooter(@NotNull final StringBuilder sb) {
+        sb.append("    </errors>\n");
+        sb.append("</results>\n");
+    }
+
+    private static long percentile(@NotNull final long[] sorted, final int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int)Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.johnthagen.cppcheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+// stands in for the Cppcheck executable so the execution can be exercised without a real analysis - it is started via
+// the fake-cppcheck script which is configured as the Cppcheck path. The behavior is controlled by options which can
+// be added to the Cppcheck options of the configuration - all other options are ignored:
+//   --fake-findings=<n>     findings per analyzed file (default 10)
+//   --fake-locations=<n>    locations per finding (default 1)
+//   --fake-startup-ms=<n>   delay before the output starts
+//   --fake-delay-ms=<n>     delay before each finding
+//   --fake-exit-code=<n>    exit code after the output was written
+//   --fake-hang             never exit after the output was written - triggers the timeout or the cancellation
+//   --fake-invalid-xml      stop the output in the middle of a finding
+//   --fake-misra-bail       report that the MISRA addon bailed out
+// it has no dependencies so the script can compile it on its own
+public class FakeCppcheck {
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        int findings = 10;
+        int locations = 1;
+        long startupMs = 0;
+        long delayMs = 0;
+        int exitCode = 0;
+        boolean hang = false;
+        boolean invalidXml = false;
+        boolean misraBail = false;
+        boolean dump = false;
+        final List<String> files = new ArrayList<>();
+        for (final String arg : args) {
+            if (arg.startsWith("--fake-findings=")) {
+                findings = Integer.parseInt(arg.substring("--fake-findings=".length()));
+            }
+            else if (arg.startsWith("--fake-locations=")) {
+                locations = Math.max(1, Integer.parseInt(arg.substring("--fake-locations=".length())));
+            }
+            else if (arg.startsWith("--fake-startup-ms=")) {
+                startupMs = Long.parseLong(arg.substring("--fake-startup-ms=".length()));
+            }
+            else if (arg.startsWith("--fake-delay-ms=")) {
+                delayMs = Long.parseLong(arg.substring("--fake-delay-ms=".length()));
+            }
+            else if (arg.startsWith("--fake-exit-code=")) {
+                exitCode = Integer.parseInt(arg.substring("--fake-exit-code=".length()));
+            }
+            else if (arg.equals("--fake-hang")) {
+                hang = true;
+            }
+            else if (arg.equals("--fake-invalid-xml")) {
+                invalidXml = true;
+            }
+            else if (arg.equals("--fake-misra-bail")) {
+                misraBail = true;
+            }
+            else if (arg.equals("--dump")) {
+                dump = true;
+            }
+            else if (arg.equals("--version")) {
+                System.out.println("Cppcheck 2.13.0");
+                return;
+            }
+            else if (arg.startsWith("--file-list=")) {
+                for (final String line : Files.readAllLines(new File(arg.substring("--file-list=".length())).toPath(), StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        files.add(line.trim());
+                    }
+                }
+            }
+            else if (!arg.startsWith("-")) {
+                files.add(arg);
+            }
+        }
+
+        Thread.sleep(startupMs);
+
+        // the XML output is written to stderr just like Cppcheck does it
+        final PrintStream err = new PrintStream(System.err, false, "UTF-8");
+        err.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        err.println("<results version=\"2\">");
+        err.println("    <cppcheck version=\"2.13.0\"/>");
+        err.println("    <errors>");
+        err.flush();
+        for (final String file : files) {
+            System.out.println("Checking " + file + " ...");
+            final int lineCount = Math.max(1, countLines(file));
+            for (int i = 0; i < findings; ++i) {
+                Thread.sleep(delayMs);
+                err.println("        <error id=\"fake" + (i % 10) + "\" severity=\"" + (i % 2 == 0 ? "warning" : "style") +
+                        "\" msg=\"Fake finding " + i + "\" verbose=\"Fake finding " + i + " reported by FakeCppcheck\" file0=\"" + escape(file) + "\">");
+                if (invalidXml && i == findings / 2) {
+                    err.flush();
+                    System.exit(exitCode);
+                }
+                for (int j = 0; j < locations; ++j) {
+                    err.println("            <location file=\"" + escape(file) + "\" line=\"" + ((i + j) % lineCount + 1) + "\" column=\"1\"" +
+                            (j > 0 ? " info=\"Fake location " + j + "\"" : "") + "/>");
+                }
+                err.println("        </error>");
+                // each finding is passed on right away so the streaming can be observed
+                err.flush();
+            }
+            if (dump) {
+                Files.write(new File(file + ".dump").toPath(), "<?xml version=\"1.0\"?>\n<dumps/>\n".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        err.println("    </errors>");
+        err.println("</results>");
+        err.flush();
+
+        if (misraBail) {
+            System.out.println("Bailing out from checking " + (files.isEmpty() ? "" : files.get(0)) + " since there was an internal error");
+        }
+        System.out.flush();
+
+        while (hang) {
+            Thread.sleep(1000);
+        }
+        System.exit(exitCode);
+    }
+
+    private static int countLines(final String file) {
+        try {
+            return Files.readAllLines(new File(file).toPath(), StandardCharsets.ISO_8859_1).size();
+        } catch (final IOException ex) {
+            return 1;
+        }
+    }
+
+    private static String escape(final String text) {
+        return text.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -18,6 +18,11 @@ class Configuration implements Configurable {
     private JFilePicker cppcheckMisraFilePicker;
     private final String[] VERBOSE_LEVEL_SPINNER_MODEL = {"0", "1", "2", "3", "4"};
     private JSpinner cppcheckVerboseLevel;
+    private JCheckBox cppcheckUseCompilationDatabase;
+    private JSpinner cppcheckMaxProcesses;
+    private JCheckBox cppcheckPrewarm;
+    private JTextArea cppcheckSuppressionsArea;
+    private JCheckBox cppcheckInlineSuppressions;
     private static final String CPPCHECK_NOTE =
             "Note: C++ projects should leave --language=c++ appended to the Cppcheck options to avoid some " +
                     "false positives in header files due to the fact that Cppcheck implicitly defaults to " +
@@ -32,6 +37,16 @@ class Configuration implements Configurable {
                     "    \"args\": [\"--rule-texts=<Path To MISRA Rules.txt>\"]\n" +
                     "}";
 
+    private static final String CPPCHECK_COMPILATION_DATABASE_NOTE =
+            "The compile_commands.json is looked up in the project directory and the build directories directly " +
+                    "below it (e.g. cmake-build-debug). With CMake it is generated by setting " +
+                    "CMAKE_EXPORT_COMPILE_COMMANDS. Passing the defines restricts Cppcheck to a single configuration.";
+
+    private static final String CPPCHECK_SUPPRESSIONS_NOTE =
+            "One suppression per line: <id>[:<path>[:<line>]] (the id and path may contain * and ?), " +
+                    "severity=<severity> or message=<regex>. The suppressions in the " +
+                    CppcheckSuppressions.PROJECT_FILE_NAME + " file in the project directory are applied as well.";
+
     private final CppcheckConfigurationModifiedListener
             listener = new CppcheckConfigurationModifiedListener(this);
 
@@ -39,6 +54,11 @@ class Configuration implements Configurable {
     static final String CONFIGURATION_KEY_CPPCHECK_OPTIONS = "cppcheckOptions";
     static final String CONFIGURATION_KEY_CPPCHECK_VERBOSE_LEVEL = "cppcheckVerboseLevel";
     static final String CONFIGURATION_KEY_CPPCHECK_MISRA_PATH = "cppcheckMisraPath";
+    static final String CONFIGURATION_KEY_CPPCHECK_USE_COMPILATION_DATABASE = "cppcheckUseCompilationDatabase";
+    static final String CONFIGURATION_KEY_CPPCHECK_MAX_PROCESSES = "cppcheckMaxProcesses";
+    static final String CONFIGURATION_KEY_CPPCHECK_PREWARM = "cppcheckPrewarm";
+    static final String CONFIGURATION_KEY_CPPCHECK_SUPPRESSIONS = "cppcheckSuppressions";
+    static final String CONFIGURATION_KEY_CPPCHECK_INLINE_SUPPRESSIONS = "cppcheckInlineSuppressions";
 
     private static final String defaultOptions = "--enable=warning,performance,portability,style --language=c++";
 
@@ -63,6 +83,13 @@ class Configuration implements Configurable {
         cppcheckMisraFilePicker = new JFilePicker("MISRA Addon JSON:", "...");
         final JLabel verboseLevelLabel = new JLabel("Plugin Verbose Level:");
         cppcheckVerboseLevel = new JSpinner(new SpinnerListModel(VERBOSE_LEVEL_SPINNER_MODEL));
+        cppcheckUseCompilationDatabase = new JCheckBox("Use include paths, defines and standard from compile_commands.json");
+        final JLabel maxProcessesLabel = new JLabel("Maximum Concurrent Cppcheck Processes (Default: " + CppcheckProcessLimiter.getDefaultMaxProcesses() + "):");
+        cppcheckMaxProcesses = new JSpinner(new SpinnerNumberModel(CppcheckProcessLimiter.getDefaultMaxProcesses(), 1, 256, 1));
+        cppcheckPrewarm = new JCheckBox("Analyze changed files of the open editors in advance while the IDE is idle");
+        final JLabel suppressionsLabel = new JLabel("Suppressions:");
+        cppcheckSuppressionsArea = new JTextArea(4, 80);
+        cppcheckInlineSuppressions = new JCheckBox("Apply inline suppressions (// cppcheck-suppress <id>)");
 
         // The first time a user installs the plugin, save the default options in their properties.
         if (Properties.get(CONFIGURATION_KEY_CPPCHECK_OPTIONS) == null ||
@@ -85,6 +112,14 @@ class Configuration implements Configurable {
             Properties.set(CONFIGURATION_KEY_CPPCHECK_MISRA_PATH, cppcheckMisraFilePicker.getTextField().getText());
         }
 
+        final JTextArea cppcheckCompilationDatabaseNoteArea = new JTextArea(CPPCHECK_COMPILATION_DATABASE_NOTE, 2, 80);
+        cppcheckCompilationDatabaseNoteArea.setLineWrap(true);
+        cppcheckCompilationDatabaseNoteArea.setWrapStyleWord(true);
+
+        final JTextArea cppcheckSuppressionsNoteArea = new JTextArea(CPPCHECK_SUPPRESSIONS_NOTE, 2, 80);
+        cppcheckSuppressionsNoteArea.setLineWrap(true);
+        cppcheckSuppressionsNoteArea.setWrapStyleWord(true);
+
         final JTextArea cppcheckNoteArea = new JTextArea(CPPCHECK_NOTE, 2, 80);
         cppcheckNoteArea.setLineWrap(true);
         cppcheckNoteArea.setWrapStyleWord(true);
@@ -99,6 +134,11 @@ class Configuration implements Configurable {
         cppcheckOptionsField.getDocument().addDocumentListener(listener);
         cppcheckMisraFilePicker.getTextField().getDocument().addDocumentListener(listener);
         cppcheckVerboseLevel.addChangeListener(listener);
+        cppcheckUseCompilationDatabase.addChangeListener(listener);
+        cppcheckMaxProcesses.addChangeListener(listener);
+        cppcheckPrewarm.addChangeListener(listener);
+        cppcheckSuppressionsArea.getDocument().addDocumentListener(listener);
+        cppcheckInlineSuppressions.addChangeListener(listener);
 
         final JPanel jPanel = new JPanel();
 
@@ -110,6 +150,14 @@ class Configuration implements Configurable {
         jPanel.add(cppcheckOptionsField);
         jPanel.add(cppcheckNoteArea);
 
+        jPanel.add(cppcheckUseCompilationDatabase);
+        jPanel.add(cppcheckCompilationDatabaseNoteArea);
+
+        jPanel.add(suppressionsLabel);
+        jPanel.add(new JScrollPane(cppcheckSuppressionsArea));
+        jPanel.add(cppcheckSuppressionsNoteArea);
+        jPanel.add(cppcheckInlineSuppressions);
+
         jPanel.add(cppcheckMisraFilePicker);
         jPanel.add(cppcheckMisraNoteArea);
 
@@ -119,6 +167,13 @@ class Configuration implements Configurable {
         spinnerPanel.add(cppcheckVerboseLevel);
         jPanel.add(spinnerPanel);
 
+        final JPanel maxProcessesPanel = new JPanel();
+        maxProcessesPanel.setLayout(new BoxLayout(maxProcessesPanel, BoxLayout.X_AXIS));
+        maxProcessesPanel.add(maxProcessesLabel);
+        maxProcessesPanel.add(cppcheckMaxProcesses);
+        jPanel.add(maxProcessesPanel);
+        jPanel.add(cppcheckPrewarm);
+
         return jPanel;
     }
 
@@ -137,6 +192,11 @@ class Configuration implements Configurable {
         Properties.set(CONFIGURATION_KEY_CPPCHECK_OPTIONS, cppcheckOptionsField.getText());
         Properties.set(CONFIGURATION_KEY_CPPCHECK_VERBOSE_LEVEL, cppcheckVerboseLevel.getValue().toString());
         Properties.set(CONFIGURATION_KEY_CPPCHECK_MISRA_PATH, cppcheckMisraFilePicker.getTextField().getText());
+        Properties.set(CONFIGURATION_KEY_CPPCHECK_USE_COMPILATION_DATABASE, Boolean.toString(cppcheckUseCompilationDatabase.isSelected()));
+        Properties.set(CONFIGURATION_KEY_CPPCHECK_MAX_PROCESSES, cppcheckMaxProcesses.getValue().toString());
+        Properties.set(CONFIGURATION_KEY_CPPCHECK_PREWARM, Boolean.toString(cppcheckPrewarm.isSelected()));
+        Properties.set(CONFIGURATION_KEY_CPPCHECK_SUPPRESSIONS, cppcheckSuppressionsArea.getText());
+        Properties.set(CONFIGURATION_KEY_CPPCHECK_INLINE_SUPPRESSIONS, Boolean.toString(cppcheckInlineSuppressions.isSelected()));
         modified = false;
     }
 
@@ -154,6 +214,14 @@ class Configuration implements Configurable {
         final String cppcheckMisraPath = Properties.get(CONFIGURATION_KEY_CPPCHECK_MISRA_PATH);
         cppcheckMisraFilePicker.getTextField().setText(cppcheckMisraPath);
 
+        cppcheckUseCompilationDatabase.setSelected(CppcheckCompilationDatabase.isEnabled());
+        cppcheckMaxProcesses.setValue(CppcheckProcessLimiter.getMaxProcesses());
+        cppcheckPrewarm.setSelected(CppcheckPrewarmer.isEnabled());
+
+        final String cppcheckSuppressions = Properties.get(CONFIGURATION_KEY_CPPCHECK_SUPPRESSIONS);
+        cppcheckSuppressionsArea.setText(cppcheckSuppressions != null ? cppcheckSuppressions : "");
+        cppcheckInlineSuppressions.setSelected(CppcheckSuppressions.isInlineEnabled());
+
         modified = false;
     }
 
@@ -162,6 +230,11 @@ class Configuration implements Configurable {
         cppcheckFilePicker.getTextField().getDocument().removeDocumentListener(listener);
         cppcheckOptionsField.getDocument().removeDocumentListener(listener);
         cppcheckVerboseLevel.removeChangeListener(listener);
+        cppcheckUseCompilationDatabase.removeChangeListener(listener);
+        cppcheckMaxProcesses.removeChangeListener(listener);
+        cppcheckPrewarm.removeChangeListener(listener);
+        cppcheckSuppressionsArea.getDocument().removeDocumentListener(listener);
+        cppcheckInlineSuppressions.removeChangeListener(listener);
         cppcheckMisraFilePicker.getTextField().getDocument().removeDocumentListener(listener);
     }
 
@@ -1,42 +1,49 @@
 package com.github.johnthagen.cppcheck;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.intellij.codeInspection.InspectionManager;
 import com.intellij.codeInspection.ProblemDescriptor;
 import com.intellij.codeInspection.ProblemHighlightType;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.CapturingProcessHandler;
-import com.intellij.execution.process.ProcessOutput;
+import com.intellij.execution.process.OSProcessUtil;
 import com.intellij.notification.NotificationType;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.progress.EmptyProgressIndicator;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.DocumentUtil;
-import com.intellij.util.execution.ParametersListUtil;
 import org.jetbrains.annotations.NotNull;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 class CppCheckInspectionImpl {
-    CppCheckInspectionImpl(final int verboseLevel) {
+    CppCheckInspectionImpl(final int verboseLevel, @NotNull final CppcheckSuppressions.Matcher suppressions) {
         this.verboseLevel = verboseLevel;
+        this.suppressions = suppressions;
     }
 
     private static ProblemHighlightType severityToHighlightType(@NotNull final String severity) {
@@ -59,259 +66,640 @@ class CppCheckInspectionImpl {
         }
     }
 
+    private static final Logger LOG = Logger.getInstance(CppCheckInspectionImpl.class);
+
     private final int verboseLevel;
+    private final CppcheckSuppressions.Matcher suppressions;
+    // whether the whole program is analyzed by a single invocation - unusedFunction is only reported then
+    private boolean wholeProgram = false;
     private static final String INCONCLUSIVE_TEXT = ":inconclusive";
+    private static final String BATCH_TITLE = "batch analysis";
 
-    static class Location
-    {
-        Location(@NotNull final Node location) {
-            final NamedNodeMap locationAttributes = location.getAttributes();
-            file = new File(locationAttributes.getNamedItem("file").getNodeValue()).getName();
-            line = Integer.parseInt(locationAttributes.getNamedItem("line").getNodeValue());
-            final Node columnAttr = locationAttributes.getNamedItem("column");
-            // the "column" attribute was added in Cppcheck 1.89
-            if (columnAttr != null) {
-                column = Integer.parseInt(columnAttr.getNodeValue());
-            }
-            else {
-                column = -1;
-            }
-            final Node infoAttr = locationAttributes.getNamedItem("info");
-            if (infoAttr != null) {
-                info = infoAttr.getNodeValue();
-            } else {
-                info = null;
-            }
-        }
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    @NotNull
+    private static XMLInputFactory createXmlInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
 
-        final String file;
+    // returns null if the location is malformed
+    @Nullable
+    private static CppcheckFinding.Location parseLocation(@NotNull final XMLStreamReader reader,
+                                                          @Nullable final VirtualFile vFile,
+                                                          @Nullable final String sourceFilePath) {
+        final String path = reader.getAttributeValue(null, "file");
+        final String lineAttr = reader.getAttributeValue(null, "line");
+        if (path == null || lineAttr == null) {
+            return null;
+        }
         final int line;
         final int column;
-        final String info;
+        try {
+            line = Integer.parseInt(lineAttr);
+            // the "column" attribute was added in Cppcheck 1.89
+            final String columnAttr = reader.getAttributeValue(null, "column");
+            column = columnAttr != null ? Integer.parseInt(columnAttr) : -1;
+        } catch (final NumberFormatException ex) {
+            return null;
+        }
+        final String info = reader.getAttributeValue(null, "info");
+        if (vFile == null || sourceFilePath == null) {
+            // keep the full path so the finding can be assigned to the file later on
+            return new CppcheckFinding.Location(path, false, line, column, info);
+        }
+        final String file = new File(path).getName();
+        // the analyzed file might be a copy of the document or the file itself - so compare the full path
+        final boolean sourceFile = file.equals(new File(sourceFilePath).getName()) &&
+                FileUtil.pathsEqual(CppcheckRunner.normalizePath(path), CppcheckRunner.normalizePath(sourceFilePath));
+        // replace temporary file name with actual name
+        return new CppcheckFinding.Location(sourceFile ? vFile.getName() : file, sourceFile, line, column, info);
     }
 
-    @NotNull
-    public List<ProblemDescriptor> parseOutput(@NotNull final PsiFile psiFile,
-                                               @NotNull final InspectionManager manager,
-                                               @NotNull final Document document,
-                                               @NotNull final String cppcheckOutput,
-                                               @NotNull final String sourceFileName) throws IOException, SAXException, ParserConfigurationException {
+    void setWholeProgram(final boolean wholeProgram) {
+        this.wholeProgram = wholeProgram;
+    }
 
-        final VirtualFile vFile = psiFile.getVirtualFile();
-        if (verboseLevel >= 1) {
-            // TODO: provide XML output via a "Show Cppcheck output" action - event log messages are truncated
-            CppcheckNotification.send("finished analysis for " + vFile.getCanonicalPath(),
-                    "",
-                    NotificationType.INFORMATION);
+    // the suppressions which depend on the analyzed file - checked before anything else of the entry is read
+    private boolean isIgnored(@NotNull final String id, @Nullable final VirtualFile vFile) {
+        // suppress this warning until Cppcheck handles them in a better way - it is only reliable when the whole
+        // program is analyzed at once
+        if (!wholeProgram && id.equals("unusedFunction")) {
+            return true;
         }
 
-        final List<ProblemDescriptor> descriptors = new ArrayList<>();
-
-        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        final DocumentBuilder db = dbf.newDocumentBuilder();
-        final org.w3c.dom.Document doc = db.parse(new InputSource(new StringReader(cppcheckOutput)));
-
-        final NodeList errors = doc.getElementsByTagName("error");
-        for (int i = 0; i < errors.getLength(); ++i) {
-            /*
-                <error id="accessMoved" severity="warning" msg="Access of moved variable &apos;a&apos;." verbose="Access of moved variable &apos;a&apos;." cwe="672" hash="6576707224072251515" inconclusive="true">
-                    <location file="/mnt/s/clion/example_lite_2/test.cpp" line="14" column="18" info="Access of moved variable &apos;a&apos;."/>
-                    <location file="/mnt/s/clion/example_lite_2/test.cpp" line="13" column="7" info="Calling std::move(a)"/>
-                    <symbol>a</symbol>
-                </error>
-            */
-
-            final Node error = errors.item(i);
-            final NamedNodeMap attributes = error.getAttributes();
-
-            final String id = attributes.getNamedItem("id").getNodeValue();
-
-            // Skip the "toomanyconfigs" error
-            /*
-       			<error id="toomanyconfigs" severity="information" msg="Too many #ifdef configurations - cppcheck only checks 1 of 12 configurations. Use --force to check all configurations." verbose="The checking of the file will be interrupted because there are too many #ifdef configurations. Checking of all #ifdef configurations can be forced by --force command line option or from GUI preferences. However that may increase the checking time." cwe="398">
-                    <location file="C:\Users\Name\AppData\Local\Temp\___valueflow.cpp" line="0" column="0"/>
-                </error>
-            */
-            if (id.equals("toomanyconfigs")) {
-                continue;
-            }
+        return vFile != null && isIgnoredInHeader(id, vFile.getPath());
+    }
 
-            // Skip the "missingIncludeSystem" error
-            /*
-       			<error id="missingIncludeSystem" severity="information" msg="Cppcheck cannot find all the include files (use --check-config for details)" verbose="Cppcheck cannot find all the include files. Cppcheck can check the code without the include files found. But the results will probably be more accurate if all the include files are found. Please check your project&apos;s include directories and add all of them as include directories for Cppcheck. To see what files Cppcheck cannot find use --check-config."/>
-            */
-            if (id.equals("missingIncludeSystem")) {
-                continue;
-            }
+    // suppress this warning for headers until Cppcheck handles them in a better way - without an analyzed file it is
+    // checked for the file the finding is located in
+    private static boolean isIgnoredInHeader(@NotNull final String id, @NotNull final String path) {
+        return id.equals("unusedStructMember") && SupportedExtensions.isHeaderFile(path);
+    }
 
-            // suppress this warning until Cppcheck handles them in a better way
-            if (id.equals("unusedFunction")) {
-                continue;
+    // skips the remainder of the current element including all its children
+    private static void skipElement(@NotNull final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
             }
-
-            // suppress this warnings for now - will be properly handled in an upcoming patch
-            if (id.equals("noValidConfiguration") || id.equals("missingInclude")) {
-                continue;
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
             }
+        }
+    }
 
-            // we are never interested in these
-            if (id.equals("unmatchedSuppression") || id.equals("purgedConfiguration")) {
-                continue;
-            }
+    // parses the output while it is being read and passes each finding to the consumer as soon as it is complete
+    public void parseOutput(@NotNull final VirtualFile vFile,
+                            @NotNull final InputStream cppcheckOutput,
+                            @NotNull final String sourceFilePath,
+                            @NotNull final Consumer<CppcheckFinding> consumer) throws XMLStreamException {
+        parseOutput(vFile, sourceFilePath, vFile.getCanonicalPath(), cppcheckOutput, consumer);
+    }
 
-            // Generated since 2.13.0 when "information" is enabled.
-            /*
-                <error id="checkersReport" severity="information" msg="Active checkers: 59/592 (use --checkers-report=&lt;filename&gt; to see details)" verbose="Active checkers: 59/592 (use --checkers-report=&lt;filename&gt; to see details)"/>
-             */
-            if (id.equals("checkersReport")) {
-                continue;
-            }
+    // parses the output of the analysis of multiple files - the locations contain the full path of the file
+    public void parseOutput(@NotNull final InputStream cppcheckOutput,
+                            @NotNull final Consumer<CppcheckFinding> consumer) throws XMLStreamException {
+        parseOutput(null, null, BATCH_TITLE, cppcheckOutput, consumer);
+    }
 
-            // suppress this warning for headers until Cppcheck handles them in a better way
-            if (SupportedExtensions.isHeaderFile(vFile) && id.equals("unusedStructMember")) {
-                continue;
-            }
+    private void parseOutput(@Nullable final VirtualFile vFile,
+                             @Nullable final String sourceFilePath,
+                             @NotNull final String title,
+                             @NotNull final InputStream cppcheckOutput,
+                             @NotNull final Consumer<CppcheckFinding> consumer) throws XMLStreamException {
+        final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(cppcheckOutput);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("error")) {
+                    continue;
+                }
 
-            final String severity = attributes.getNamedItem("severity").getNodeValue();
-            final String errorMessage = attributes.getNamedItem("msg").getNodeValue();
-            final Node inconclusiveNode = attributes.getNamedItem("inconclusive");
-            final boolean inconclusive = inconclusiveNode != null && inconclusiveNode.getNodeValue().equals("true");
+                /*
+                    <error id="accessMoved" severity="warning" msg="Access of moved variable &apos;a&apos;." verbose="Access of moved variable &apos;a&apos;." cwe="672" hash="6576707224072251515" inconclusive="true">
+                        <location file="/mnt/s/clion/example_lite_2/test.cpp" line="14" column="18" info="Access of moved variable &apos;a&apos;."/>
+                        <location file="/mnt/s/clion/example_lite_2/test.cpp" line="13" column="7" info="Calling std::move(a)"/>
+                        <symbol>a</symbol>
+                    </error>
+                */
+
+                final String id = reader.getAttributeValue(null, "id");
+                final String severity = reader.getAttributeValue(null, "severity");
+                final String errorMessage = reader.getAttributeValue(null, "msg");
+                if (id == null || severity == null || errorMessage == null) {
+                    LOG.warn("skipping malformed entry in the output for " + title + ": id=" + id + " severity=" + severity + " msg=" + errorMessage);
+                    skipElement(reader);
+                    continue;
+                }
+                if (suppressions.isIgnoredId(id) || isIgnored(id, vFile)) {
+                    skipElement(reader);
+                    continue;
+                }
 
-            final ArrayList<Location> locations = new ArrayList<>();
+                if (suppressions.isIgnoredBySeverityOrMessage(severity, errorMessage)) {
+                    skipElement(reader);
+                    continue;
+                }
+                final boolean inconclusive = "true".equals(reader.getAttributeValue(null, "inconclusive"));
+
+                final ArrayList<CppcheckFinding.Location> locations = new ArrayList<>();
+
+                // collect the "location" children
+                boolean malformed = false;
+                int depth = 1;
+                while (depth > 0) {
+                    final int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        if (depth == 1 && reader.getLocalName().equals("location")) {
+                            final CppcheckFinding.Location location = parseLocation(reader, vFile, sourceFilePath);
+                            if (location != null) {
+                                locations.add(location);
+                            }
+                            else {
+                                malformed = true;
+                            }
+                        }
+                        ++depth;
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT) {
+                        --depth;
+                    }
+                }
+                if (malformed) {
+                    LOG.warn("skipping " + id + " with a malformed location in the output for " + title);
+                    continue;
+                }
 
-            // look for the first "location" child name
-            final NodeList children = error.getChildNodes();
-            for (int j = 0; j < children.getLength(); ++j) {
-                final Node child = children.item(j);
-                if (child.getNodeName().equals("location")) {
-                    locations.add(new Location(child));
+                // ignore entries without location e.g. missingIncludeSystem
+                if (locations.isEmpty()) {
+                    CppcheckNotification.send("no location for " + title,
+                            id + " " + severity + " " + inconclusive + " " + errorMessage,
+                            NotificationType.ERROR);
+                    continue;
                 }
-            }
 
-            // ignore entries without location e.g. missingIncludeSystem
-            if (locations.isEmpty()) {
-                CppcheckNotification.send("no location for " + vFile.getCanonicalPath(),
-                        id + " " + severity + " " + inconclusive + " " + errorMessage,
-                        NotificationType.ERROR);
-                continue;
-            }
+                final CppcheckFinding.Location location = locations.get(0);
+                if (vFile == null && isIgnoredInHeader(id, location.file)) {
+                    continue;
+                }
 
-            final String fileName = locations.get(0).file;
-            int lineNumber = locations.get(0).line;
-            // TODO: use in ProblemDescriptor
-            final int column = locations.get(0).column;
+                if (verboseLevel >= 4) {
+                    CppcheckNotification.send(id + " for " + title,
+                            id + " " + severity + " " + inconclusive + " " + errorMessage + " " + location.file + " " + location.line + " " + location.column,
+                            NotificationType.INFORMATION);
+                }
 
-            if (verboseLevel >= 4) {
-                CppcheckNotification.send(id + " for " + vFile.getCanonicalPath(),
-                        id + " " + severity + " " + inconclusive + " " + errorMessage + " " + fileName + " " + lineNumber + " " + column,
-                        NotificationType.INFORMATION);
-            }
+                // If a file #include's header files, Cppcheck will also run on the header files and print
+                // any errors. These errors don't apply to the current file and should not be drawn. They can
+                // be distinguished by checking the file name.
+                if (sourceFilePath != null && !location.sourceFile) {
+                    continue;
+                }
 
-            // If a file #include's header files, Cppcheck will also run on the header files and print
-            // any errors. These errors don't apply to the current file and should not be drawn. They can
-            // be distinguished by checking the file name.
-            if (!fileName.equals(sourceFileName)) {
-                continue;
-            }
+                if (suppressions.isIgnoredAt(id, vFile != null ? vFile.getPath() : location.file, location.line)) {
+                    continue;
+                }
 
-            // Cppcheck error
-            if (lineNumber <= 0 || lineNumber > document.getLineCount()) {
-                CppcheckNotification.send("line number out-of-bounds for " + vFile.getCanonicalPath(),
-                        id + " " + severity + " " + inconclusive + " " + errorMessage + " " + fileName + " " + lineNumber + " " + column,
-                        NotificationType.ERROR);
-                continue;
+                locations.trimToSize();
+                consumer.accept(new CppcheckFinding(id, severity, errorMessage, inconclusive, locations));
             }
+        } finally {
+            reader.close();
+        }
 
-            // Document counts lines starting at 0, rather than 1 like in cppcheck.
-            lineNumber -= 1;
-
-            final int lineStartOffset = DocumentUtil.getFirstNonSpaceCharOffset(document, lineNumber);
-            final int lineEndOffset = document.getLineEndOffset(lineNumber);
-
-            String details = "";
-            if (locations.size() > 1) {
-                final StringBuilder sb = new StringBuilder();
-                for (final Location l : locations) {
-                    if (l.info == null)
-                        continue;
-                    final String name;
-                    if (l.file.equals(sourceFileName)) {
-                        name = vFile.getName(); // replace temporary file name with actual name
-                    } else {
-                        name = l.file;
-                    }
-                    sb.append(String.format("\n%s:%d: note: %s", name, l.line, l.info));
-                }
-                if (sb.length() > 0) {
-                    details = "\n" + sb;
-                }
+        if (verboseLevel >= 1) {
+            CppcheckNotification.send("finished analysis for " + title,
+                    "",
+                    NotificationType.INFORMATION);
+        }
+    }
+
+    @NotNull
+    static List<ProblemDescriptor> createProblemDescriptors(@NotNull final PsiFile psiFile,
+                                                            @NotNull final InspectionManager manager,
+                                                            @NotNull final Document document,
+                                                            @NotNull final List<CppcheckFinding> findings) {
+        final VirtualFile vFile = psiFile.getVirtualFile();
+        final List<ProblemDescriptor> descriptors = new ArrayList<>(findings.size());
+        for (final CppcheckFinding finding : findings) {
+            final TextRange range = getLineRange(vFile, document, finding);
+            if (range == null) {
+                continue;
             }
 
             final ProblemDescriptor problemDescriptor = manager.createProblemDescriptor(
                     psiFile,
-                    TextRange.create(lineStartOffset, lineEndOffset),
-                    "Cppcheck: (" + severity + (inconclusive ? INCONCLUSIVE_TEXT : "") + ") " + id + ": " + errorMessage + details,
-                    severityToHighlightType(severity),
+                    range,
+                    formatMessage(finding),
+                    severityToHighlightType(finding.severity),
                     true);
             descriptors.add(problemDescriptor);
         }
         return descriptors;
     }
 
-    private static final int TIMEOUT_MS = 60 * 1000;
+    // the range of the line of the finding without the leading whitespaces
+    @Nullable
+    static TextRange getLineRange(@NotNull final VirtualFile vFile,
+                                  @NotNull final Document document,
+                                  @NotNull final CppcheckFinding finding) {
+        int lineNumber = finding.locations.get(0).line;
+        // TODO: use in ProblemDescriptor
+        final int column = finding.locations.get(0).column;
+
+        // Cppcheck error
+        if (lineNumber <= 0 || lineNumber > document.getLineCount()) {
+            CppcheckNotification.send("line number out-of-bounds for " + vFile.getCanonicalPath(),
+                    finding.id + " " + finding.severity + " " + finding.inconclusive + " " + finding.msg + " " + vFile.getName() + " " + lineNumber + " " + column,
+                    NotificationType.ERROR);
+            return null;
+        }
+
+        // Document counts lines starting at 0, rather than 1 like in cppcheck.
+        lineNumber -= 1;
+
+        final int lineStartOffset = DocumentUtil.getFirstNonSpaceCharOffset(document, lineNumber);
+        final int lineEndOffset = document.getLineEndOffset(lineNumber);
+        return TextRange.create(lineStartOffset, lineEndOffset);
+    }
+
+    @NotNull
+    static String formatMessage(@NotNull final CppcheckFinding finding) {
+        String details = "";
+        if (finding.locations.size() > 1) {
+            final StringBuilder sb = new StringBuilder();
+            for (final CppcheckFinding.Location l : finding.locations) {
+                if (l.info == null)
+                    continue;
+                sb.append(String.format("\n%s:%d: note: %s", l.file, l.line, l.info));
+            }
+            if (sb.length() > 0) {
+                details = "\n" + sb;
+            }
+        }
+
+        return "Cppcheck: (" + finding.severity + (finding.inconclusive ? INCONCLUSIVE_TEXT : "") + ") " + finding.id + ": " + finding.msg + details;
+    }
+
+    // the timeout of the addon - the one of Cppcheck is determined by the CppcheckCostModel
+    private static final long TIMEOUT_MS = CppcheckCostModel.DEFAULT_TIMEOUT_MS;
+    private static final int POLL_MS = 50;
 
-    public String executeCommandOnFile(@NotNull final VirtualFile vFile,
-                                       @NotNull final File command,
-                                       @NotNull final String options,
-                                       @NotNull final File filePath,
-                                       final String cppcheckMisraPath) throws CppcheckError, ExecutionException {
+    private interface OutputParser {
+        void parse(@NotNull InputStream stderr) throws XMLStreamException;
+    }
+
+    @NotNull
+    private static GeneralCommandLine createCommandLine(@NotNull final File command,
+                                                        @NotNull final CppcheckCommandLine options,
+                                                        final String cppcheckMisraPath) {
         final GeneralCommandLine cmd = new GeneralCommandLine()
                 .withExePath(command.toString())
-                .withParameters(ParametersListUtil.parse(options))
-                .withParameters(ParametersListUtil.parse("\"" + filePath.getAbsolutePath() + "\""));
+                .withParameters(options.getParameters());
 
         // Need to be able to get python from the system env
         if (cppcheckMisraPath != null && !cppcheckMisraPath.isEmpty()) {
             cmd.withParentEnvironmentType(GeneralCommandLine.ParentEnvironmentType.SYSTEM);
         }
+        return cmd;
+    }
+
+    // the --xml output is parsed while Cppcheck is still running and optionally copied to rawOutput
+    // a CppcheckError flagged as timeout is thrown if the process exceeds the timeout
+    public void executeCommandOnFile(@NotNull final VirtualFile vFile,
+                                     @NotNull final File command,
+                                     @NotNull final CppcheckCommandLine options,
+                                     @NotNull final File filePath,
+                                     final String cppcheckMisraPath,
+                                     final long timeoutMs,
+                                     @NotNull final CppcheckProcessLimiter.Priority priority,
+                                     @NotNull final ProgressIndicator indicator,
+                                     @Nullable final OutputStream rawOutput,
+                                     @Nullable final CppcheckMetrics.Execution execution,
+                                     @NotNull final Consumer<CppcheckFinding> consumer) throws CppcheckError, ExecutionException, IOException, XMLStreamException {
+        final GeneralCommandLine cmd = createCommandLine(command, options, cppcheckMisraPath)
+                .withParameters(filePath.getAbsolutePath());
+
+        execute(vFile.getCanonicalPath(), cmd, cppcheckMisraPath, timeoutMs, priority, 1, indicator, rawOutput, execution,
+                stderr -> parseOutput(vFile, stderr, filePath.getAbsolutePath(), consumer));
+    }
+
+    // analyzes a source file and reports the findings in all files - the locations contain the full path. Without an
+    // analyzed file the findings in headers are suppressed by the file they are located in and unusedFunction is
+    // suppressed since only a single translation unit is analyzed.
+    public void executeCommandOnTranslationUnit(@NotNull final File command,
+                                                @NotNull final CppcheckCommandLine options,
+                                                @NotNull final File filePath,
+                                                final String cppcheckMisraPath,
+                                                final long timeoutMs,
+                                                @NotNull final CppcheckProcessLimiter.Priority priority,
+                                                @NotNull final ProgressIndicator indicator,
+                                                @Nullable final OutputStream rawOutput,
+                                                @Nullable final CppcheckMetrics.Execution execution,
+                                                @NotNull final Consumer<CppcheckFinding> consumer) throws CppcheckError, ExecutionException, IOException, XMLStreamException {
+        final GeneralCommandLine cmd = createCommandLine(command, options, cppcheckMisraPath)
+                .withParameters(filePath.getAbsolutePath());
+
+        execute(filePath.getAbsolutePath(), cmd, cppcheckMisraPath, timeoutMs, priority, 1, indicator, rawOutput, execution,
+                stderr -> parseOutput(stderr, consumer));
+    }
+
+    // analyzes all the files listed in fileList with a single Cppcheck invocation - the timeout covers all of them
+    // up to the given number of jobs is used depending on the available process slots
+    // the build directory has to be used exclusively by this invocation
+    public void executeCommandOnFiles(@NotNull final File command,
+                                      @NotNull final CppcheckCommandLine options,
+                                      @NotNull final File fileList,
+                                      @Nullable final File buildDir,
+                                      final int jobs,
+                                      final String cppcheckMisraPath,
+                                      final long timeoutMs,
+                                      @NotNull final ProgressIndicator indicator,
+                                      @Nullable final OutputStream rawOutput,
+                                      @Nullable final CppcheckMetrics.Execution execution,
+                                      @NotNull final Consumer<CppcheckFinding> consumer) throws CppcheckError, ExecutionException, IOException, XMLStreamException {
+        final GeneralCommandLine cmd = createCommandLine(command, options, cppcheckMisraPath)
+                .withParameters("--file-list=" + fileList.getAbsolutePath());
+        if (buildDir != null) {
+            cmd.withParameters("--cppcheck-build-dir=" + buildDir.getAbsolutePath());
+        }
+
+        execute(BATCH_TITLE, cmd, cppcheckMisraPath, timeoutMs, CppcheckProcessLimiter.Priority.BATCH, jobs, indicator, rawOutput, execution,
+                stderr -> parseOutput(stderr, consumer));
+    }
+
+    // runs an addon on the dump of a file - the findings are written to stdout as JSON (one per line) and are only
+    // reported for the analyzed file
+    public void executeAddon(@NotNull final VirtualFile vFile,
+                             @NotNull final String python,
+                             @NotNull final CppcheckMisraPipeline.Addon addon,
+                             @NotNull final File dumpFile,
+                             @NotNull final String sourceFilePath,
+                             @NotNull final ProgressIndicator indicator,
+                             @Nullable final CppcheckMetrics.Execution execution,
+                             @NotNull final Consumer<CppcheckFinding> consumer) throws CppcheckError, ExecutionException, IOException {
+        final GeneralCommandLine cmd = new GeneralCommandLine(python)
+                .withParameters(addon.script.getAbsolutePath())
+                .withParameters(addon.args)
+                .withParameters("--cli", dumpFile.getAbsolutePath())
+                // Need to be able to get python from the system env
+                .withParentEnvironmentType(GeneralCommandLine.ParentEnvironmentType.SYSTEM);
+
+        final String stdout;
+        try {
+            stdout = execute(vFile.getCanonicalPath(), cmd, null, TIMEOUT_MS, CppcheckProcessLimiter.Priority.ADDON, 1,
+                    indicator, null, execution, stderr -> {
+                    });
+        } catch (final XMLStreamException ex) {
+            // the output of the addon is not XML - nothing is parsed while it is running
+            throw new IllegalStateException(ex);
+        }
+
+        final Gson gson = new Gson();
+        final String normalizedSourceFilePath = CppcheckRunner.normalizePath(sourceFilePath);
+        for (final String line : stdout.split("\r?\n")) {
+            if (!line.startsWith("{")) {
+                continue;
+            }
+            final AddonFinding addonFinding;
+            try {
+                addonFinding = gson.fromJson(line, AddonFinding.class);
+            } catch (final JsonParseException ex) {
+                continue;
+            }
+            if (addonFinding == null || addonFinding.file == null || addonFinding.errorId == null) {
+                continue;
+            }
+
+            final String id = (addonFinding.addon != null ? addonFinding.addon + "-" : "") + addonFinding.errorId;
+            final String severity = addonFinding.severity != null ? addonFinding.severity : "style";
+            final String message = addonFinding.message != null ? addonFinding.message : "";
+            if (suppressions.isIgnoredId(id) || suppressions.isIgnoredBySeverityOrMessage(severity, message) ||
+                    !FileUtil.pathsEqual(CppcheckRunner.normalizePath(addonFinding.file), normalizedSourceFilePath) ||
+                    suppressions.isIgnoredAt(id, vFile.getPath(), addonFinding.linenr)) {
+                continue;
+            }
+
+            final List<CppcheckFinding.Location> locations = Collections.singletonList(
+                    new CppcheckFinding.Location(vFile.getName(), true, addonFinding.linenr, addonFinding.column, null));
+            consumer.accept(new CppcheckFinding(id, severity, message, false, locations));
+        }
+    }
+
+    // a line of the --cli output of an addon
+    private static class AddonFinding {
+        String file;
+        int linenr;
+        int column;
+        String severity;
+        String message;
+        String addon;
+        String errorId;
+    }
+
+    // waits for a process slot - jobs > 1 adds -j with the number of acquired slots - returns stdout
+    @NotNull
+    private String execute(@NotNull final String title,
+                         @NotNull final GeneralCommandLine cmd,
+                         final String cppcheckMisraPath,
+                         final long timeoutMs,
+                         @NotNull final CppcheckProcessLimiter.Priority priority,
+                         final int jobs,
+                         @NotNull final ProgressIndicator indicator,
+                         @Nullable final OutputStream rawOutput,
+                         @Nullable final CppcheckMetrics.Execution execution,
+                         @NotNull final OutputParser parser) throws CppcheckError, ExecutionException, IOException, XMLStreamException {
+        final CppcheckProcessLimiter limiter = CppcheckProcessLimiter.getInstance();
+        final int slots = limiter.acquire(priority, jobs, indicator);
+        try {
+            if (jobs > 1 && slots > 1) {
+                cmd.withParameters("-j", Integer.toString(slots));
+            }
+            return executeProcess(title, cmd, cppcheckMisraPath, timeoutMs, indicator, rawOutput, execution, parser);
+        } finally {
+            limiter.release(slots);
+        }
+    }
 
+    @NotNull
+    private String executeProcess(@NotNull final String title,
+                                @NotNull final GeneralCommandLine cmd,
+                                final String cppcheckMisraPath,
+                                final long timeoutMs,
+                                @NotNull final ProgressIndicator indicator,
+                                @Nullable final OutputStream rawOutput,
+                                @Nullable final CppcheckMetrics.Execution execution,
+                                @NotNull final OutputParser parser) throws CppcheckError, ExecutionException, IOException, XMLStreamException {
         if (verboseLevel >= 2) {
-            CppcheckNotification.send("options for " + vFile.getCanonicalPath(),
+            CppcheckNotification.send("options for " + title,
                     cmd.getCommandLineString(),
                     NotificationType.INFORMATION);
         }
 
-        final CapturingProcessHandler processHandler = new CapturingProcessHandler(cmd);
-        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
-        final ProcessOutput output = processHandler.runProcessWithProgressIndicator(
-                indicator != null ? indicator : new EmptyProgressIndicator(),
-                TIMEOUT_MS);
+        final long spawnStart = System.nanoTime();
+        final Process process = cmd.createProcess();
+        final long processStart = System.nanoTime();
+        final Application application = ApplicationManager.getApplication();
+
+        // stdout is only used for error reporting
+        final Future<byte[]> stdoutFuture = application.executeOnPooledThread(() -> FileUtil.loadBytes(process.getInputStream()));
+
+        // the process is killed as soon as the indicator is cancelled or the timeout is exceeded
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        application.executeOnPooledThread(() -> {
+            final long deadline = timeoutMs > 0 ? System.currentTimeMillis() + timeoutMs : Long.MAX_VALUE;
+            try {
+                while (!process.waitFor(POLL_MS, TimeUnit.MILLISECONDS)) {
+                    if (indicator.isCanceled()) {
+                        OSProcessUtil.killProcessTree(process);
+                        return;
+                    }
+                    if (System.currentTimeMillis() >= deadline) {
+                        timedOut.set(true);
+                        OSProcessUtil.killProcessTree(process);
+                        return;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                OSProcessUtil.killProcessTree(process);
+            }
+        });
+
+        XMLStreamException parseException = null;
+        final String stdout;
+        final int exitCode;
+        try {
+            final InputStream rawStream = rawOutput != null ? new TeeInputStream(process.getErrorStream(), rawOutput) : process.getErrorStream();
+            // the time spent reading includes writing the raw output so it is not attributed to the parser
+            final CountingInputStream errorStream = new CountingInputStream(rawStream);
+            try (final InputStream stderr = errorStream) {
+                final long parseStart = System.nanoTime();
+                try {
+                    parser.parse(stderr);
+                } catch (final XMLStreamException ex) {
+                    parseException = ex;
+                }
+                if (execution != null) {
+                    execution.parseNanos = System.nanoTime() - parseStart - errorStream.readNanos;
+                }
+                // do not let the process block on a full pipe
+                final byte[] buffer = new byte[8192];
+                //noinspection StatementWithEmptyBody
+                while (stderr.read(buffer) != -1) {
+                }
+            }
 
-        if (output.isCancelled()) {
+            exitCode = process.waitFor();
+            if (execution != null) {
+                execution.spawnNanos = processStart - spawnStart;
+                execution.wallNanos = System.nanoTime() - processStart;
+                execution.outputBytes = errorStream.count;
+            }
+            stdout = new String(stdoutFuture.get(), cmd.getCharset());
+        } catch (final InterruptedException e) {
+            OSProcessUtil.killProcessTree(process);
+            throw new ProcessCanceledException(e);
+        } catch (final java.util.concurrent.ExecutionException e) {
+            throw new ExecutionException(e.getCause());
+        } finally {
+            if (process.isAlive()) {
+                OSProcessUtil.killProcessTree(process);
+            }
+        }
+
+        if (indicator.isCanceled()) {
             throw new ProcessCanceledException();
         }
 
-        if (output.isTimeout()) {
-            throw new CppcheckError("Timeout\n"
-                    + cmd.getCommandLineString());
+        if (timedOut.get()) {
+            throw new CppcheckError("Timeout after " + timeoutMs / 1000 + "s\n"
+                    + cmd.getCommandLineString(), true);
         }
 
-        if (output.getExitCode() != 0) {
-            throw new CppcheckError("Exit Code " + output.getExitCode() + "\n" +
-                    "stdout: " + output.getStdout() + "\n" +
+        if (exitCode != 0) {
+            throw new CppcheckError("Exit Code " + exitCode + "\n" +
+                    "stdout: " + stdout + "\n" +
                     cmd.getCommandLineString());
         }
 
         if (cppcheckMisraPath != null && !cppcheckMisraPath.isEmpty()) {
-            if (output.getStdout().contains("Bailing out from checking")) {
+            if (stdout.contains("Bailing out from checking")) {
                 // MISRA Mode and something went wrong with the misra addon
                 throw new CppcheckError("MISRA Bail\n" +
                         cmd.getCommandLineString() + "\n" +
-                        "stdout: " + output.getStdout() + "\n" +
-                        "stderr: " + output.getStderr());
+                        "stdout: " + stdout);
+            }
+        }
+
+        if (parseException != null) {
+            throw parseException;
+        }
+
+        return stdout;
+    }
+
+    // counts the bytes read from the stream and the time spent reading them
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+        long readNanos = 0;
+
+        CountingInputStream(@NotNull final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            final int b = super.read();
+            readNanos += System.nanoTime() - start;
+            if (b != -1) {
+                ++count;
             }
+            return b;
         }
 
-        return output.getStderr();
+        @Override
+        public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+            final long start = System.nanoTime();
+            final int n = super.read(b, off, len);
+            readNanos += System.nanoTime() - start;
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    // copies everything which is read from the stream to the output
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream out;
+
+        TeeInputStream(@NotNull final InputStream in, @NotNull final OutputStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                out.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                out.write(b, off, n);
+            }
+            return n;
+        }
     }
 }
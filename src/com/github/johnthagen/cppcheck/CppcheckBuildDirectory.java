@@ -0,0 +1,129 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// manages the --cppcheck-build-dir of the batch analysis so Cppcheck only re-analyzes the changed files
+// each set of options gets its own directory since Cppcheck keeps the list of analyzed files in it
+class CppcheckBuildDirectory {
+    private static final long MAX_BYTES = 512L * 1024 * 1024;
+    private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(30);
+    private static final int POLL_MS = 50;
+
+    private final File root;
+    // Cppcheck does not support concurrent runs using the same directory
+    private final Map<File, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    CppcheckBuildDirectory(@NotNull final Project project) {
+        root = new File(new File(PathManager.getSystemPath(), "cppcheck"), "build-" + project.getLocationHash());
+    }
+
+    @NotNull
+    static CppcheckBuildDirectory getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckBuildDirectory.class);
+    }
+
+    @NotNull
+    File getDirectory(@NotNull final String options) throws IOException {
+        final File dir = new File(root, hash(options));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("could not create " + dir.getAbsolutePath());
+        }
+        // keep track of the usage for the cleanup
+        //noinspection ResultOfMethodCallIgnored
+        dir.setLastModified(System.currentTimeMillis());
+        return dir;
+    }
+
+    // waits until no other analysis uses the directory
+    @NotNull
+    ReentrantLock lock(@NotNull final File dir, @NotNull final ProgressIndicator indicator) {
+        final ReentrantLock lock = locks.computeIfAbsent(dir, d -> new ReentrantLock());
+        try {
+            while (!lock.tryLock(POLL_MS, TimeUnit.MILLISECONDS)) {
+                indicator.checkCanceled();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(e);
+        }
+        return lock;
+    }
+
+    // removes directories which were not used for a long time and the least recently used ones if the size limit is
+    // exceeded - the given directory is kept
+    void cleanup(@NotNull final File current) {
+        final File[] dirs = root.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return;
+        }
+        Arrays.sort(dirs, Comparator.comparingLong(File::lastModified).reversed());
+
+        final long now = System.currentTimeMillis();
+        long totalBytes = 0;
+        final List<File> obsolete = new ArrayList<>();
+        for (final File dir : dirs) {
+            if (dir.equals(current)) {
+                totalBytes += size(dir);
+                continue;
+            }
+            final ReentrantLock lock = locks.get(dir);
+            if (lock != null && lock.isLocked()) {
+                continue;
+            }
+            final long size = size(dir);
+            if (now - dir.lastModified() > MAX_AGE_MS || totalBytes + size > MAX_BYTES) {
+                obsolete.add(dir);
+            }
+            else {
+                totalBytes += size;
+            }
+        }
+        for (final File dir : obsolete) {
+            FileUtil.delete(dir);
+            locks.remove(dir);
+        }
+    }
+
+    private static long size(@NotNull final File dir) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        long size = 0;
+        for (final File file : files) {
+            size += file.isDirectory() ? size(file) : file.length();
+        }
+        return size;
+    }
+
+    @NotNull
+    private static String hash(@NotNull final String options) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return StringUtil.toHexString(digest.digest(options.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
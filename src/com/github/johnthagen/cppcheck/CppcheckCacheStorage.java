@@ -0,0 +1,156 @@
+package com.github.johnthagen.cppcheck;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// binary on-disk format of the CppcheckResultCache
+class CppcheckCacheStorage {
+    private static final int MAGIC = 0x43505043; // "CPPC"
+    // bump this when the format or the filtering of the stored findings changes
+    private static final int VERSION = 1;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+    private static final int MAX_COUNT = 1024 * 1024;
+
+    // returns null if the file does not exist or cannot be used - entries are in least recently used order
+    @Nullable
+    static LinkedHashMap<String, List<CppcheckFinding>> load(@NotNull final Path path) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) > MAX_FILE_SIZE) {
+            return null;
+        }
+
+        try (final InputStream in = Files.newInputStream(path)) {
+            final CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(in), new CRC32());
+            final DataInputStream data = new DataInputStream(checked);
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                return null;
+            }
+
+            // the same ids, severities and file names are repeated a lot so share the instances
+            final Map<String, String> strings = new HashMap<>();
+
+            final int entryCount = readCount(data);
+            final LinkedHashMap<String, List<CppcheckFinding>> entries = new LinkedHashMap<>();
+            for (int i = 0; i < entryCount; ++i) {
+                final String key = readString(data, null);
+                final int findingCount = readCount(data);
+                final List<CppcheckFinding> findings = new ArrayList<>(findingCount);
+                for (int j = 0; j < findingCount; ++j) {
+                    final String id = readString(data, strings);
+                    final String severity = readString(data, strings);
+                    final String msg = readString(data, null);
+                    final boolean inconclusive = data.readBoolean();
+                    final int locationCount = readCount(data);
+                    final List<CppcheckFinding.Location> locations = new ArrayList<>(locationCount);
+                    for (int k = 0; k < locationCount; ++k) {
+                        final String file = readString(data, strings);
+                        final boolean sourceFile = data.readBoolean();
+                        final int line = data.readInt();
+                        final int column = data.readInt();
+                        final String info = data.readBoolean() ? readString(data, null) : null;
+                        locations.add(new CppcheckFinding.Location(file, sourceFile, line, column, info));
+                    }
+                    findings.add(new CppcheckFinding(id, severity, msg, inconclusive, locations));
+                }
+                entries.put(key, findings);
+            }
+
+            final long expectedChecksum = checked.getChecksum().getValue();
+            if (data.readLong() != expectedChecksum) {
+                return null;
+            }
+            return entries;
+        }
+    }
+
+    static void save(@NotNull final Path path, @NotNull final Map<String, List<CppcheckFinding>> entries) throws IOException {
+        Files.createDirectories(path.getParent());
+
+        // write to a temporary file first so an interrupted write never leaves a truncated cache behind
+        final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final OutputStream out = Files.newOutputStream(tempPath)) {
+            final CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out), new CRC32());
+            final DataOutputStream data = new DataOutputStream(checked);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(entries.size());
+            for (final Map.Entry<String, List<CppcheckFinding>> entry : entries.entrySet()) {
+                writeString(data, entry.getKey());
+                data.writeInt(entry.getValue().size());
+                for (final CppcheckFinding finding : entry.getValue()) {
+                    writeString(data, finding.id);
+                    writeString(data, finding.severity);
+                    writeString(data, finding.msg);
+                    data.writeBoolean(finding.inconclusive);
+                    data.writeInt(finding.locations.size());
+                    for (final CppcheckFinding.Location location : finding.locations) {
+                        writeString(data, location.file);
+                        data.writeBoolean(location.sourceFile);
+                        data.writeInt(location.line);
+                        data.writeInt(location.column);
+                        data.writeBoolean(location.info != null);
+                        if (location.info != null) {
+                            writeString(data, location.info);
+                        }
+                    }
+                }
+            }
+            data.flush();
+            data.writeLong(checked.getChecksum().getValue());
+            data.flush();
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // DataOutputStream.writeUTF() is limited to 64k
+    private static void writeString(@NotNull final DataOutputStream data, @NotNull final String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static int readCount(@NotNull final DataInputStream data) throws IOException {
+        final int count = data.readInt();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("invalid count " + count);
+        }
+        return count;
+    }
+
+    @NotNull
+    private static String readString(@NotNull final DataInputStream data,
+                                     @Nullable final Map<String, String> strings) throws IOException {
+        final int length = data.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        final String s = new String(bytes, StandardCharsets.UTF_8);
+        if (strings == null) {
+            return s;
+        }
+        final String existing = strings.putIfAbsent(s, s);
+        return existing != null ? existing : s;
+    }
+}
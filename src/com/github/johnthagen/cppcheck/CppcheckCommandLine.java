@@ -0,0 +1,69 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.util.execution.ParametersListUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// the already parsed options passed to Cppcheck - the template of an option profile is built once and only extended by
+// the options specific to the analyzed file
+class CppcheckCommandLine {
+    private final List<String> parameters;
+    private String key;
+
+    CppcheckCommandLine(@NotNull final List<String> parameters) {
+        this.parameters = Collections.unmodifiableList(parameters);
+    }
+
+    @NotNull
+    List<String> getParameters() {
+        return parameters;
+    }
+
+    @NotNull
+    CppcheckCommandLine prepend(@NotNull final List<String> options) {
+        if (options.isEmpty()) {
+            return this;
+        }
+        final List<String> combined = new ArrayList<>(options.size() + parameters.size());
+        combined.addAll(options);
+        combined.addAll(parameters);
+        return new CppcheckCommandLine(combined);
+    }
+
+    @NotNull
+    CppcheckCommandLine append(@NotNull final List<String> options) {
+        if (options.isEmpty()) {
+            return this;
+        }
+        final List<String> combined = new ArrayList<>(parameters.size() + options.size());
+        combined.addAll(parameters);
+        combined.addAll(options);
+        return new CppcheckCommandLine(combined);
+    }
+
+    boolean hasOptionWithPrefix(@NotNull final String prefix) {
+        for (final String parameter : parameters) {
+            if (parameter.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // identifies the options in the caches and the build directories
+    @NotNull
+    synchronized String getKey() {
+        if (key == null) {
+            key = ParametersListUtil.join(parameters);
+        }
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return getKey();
+    }
+}
@@ -0,0 +1,247 @@
+package com.github.johnthagen.cppcheck;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.execution.ParametersListUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// derives the Cppcheck options for a file from the compile_commands.json generated by the build system (e.g. CMake)
+class CppcheckCompilationDatabase {
+    private static final String FILE_NAME = "compile_commands.json";
+    // only the values which are understood by Cppcheck are passed on
+    private static final Pattern STD_PATTERN = Pattern.compile("c(\\+\\+)?[0-9][0-9]");
+
+    // as written by CMake - either command or arguments is provided
+    private static class Entry {
+        String directory;
+        String file;
+        String command;
+        List<String> arguments;
+    }
+
+    private static class Snapshot {
+        Snapshot(@NotNull final File file, final long lastModified, final long length, @NotNull final Map<String, List<String>> options) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.options = options;
+        }
+
+        final File file;
+        final long lastModified;
+        final long length;
+        // by the normalized path of the source file
+        final Map<String, List<String>> options;
+    }
+
+    // forgets the location of the compile_commands.json once one is created, changed, moved or deleted
+    static class Listener implements BulkFileListener {
+        private final Project project;
+
+        Listener(@NotNull final Project project) {
+            this.project = project;
+        }
+
+        @Override
+        public void after(@NotNull final List<? extends VFileEvent> events) {
+            if (project.isDisposed()) {
+                return;
+            }
+            for (final VFileEvent event : events) {
+                if (event.getPath().endsWith("/" + FILE_NAME)) {
+                    getInstance(project).invalidate();
+                    return;
+                }
+            }
+        }
+    }
+
+    private final Project project;
+    private volatile Snapshot snapshot;
+    // the result of find() - valid until the listener reports a change
+    private File found;
+    private boolean foundValid = false;
+
+    CppcheckCompilationDatabase(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckCompilationDatabase getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckCompilationDatabase.class);
+    }
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_USE_COMPILATION_DATABASE));
+    }
+
+    // returns null if the file is not part of the compilation database
+    @Nullable
+    List<String> getOptions(@NotNull final VirtualFile vFile) {
+        final Snapshot current = load();
+        if (current == null) {
+            return null;
+        }
+        return current.options.get(CppcheckRunner.normalizePath(vFile.getPath()));
+    }
+
+    private synchronized void invalidate() {
+        foundValid = false;
+    }
+
+    @Nullable
+    private synchronized Snapshot load() {
+        if (!foundValid) {
+            found = find();
+            foundValid = true;
+        }
+        final File file = found;
+        if (file == null) {
+            snapshot = null;
+            return null;
+        }
+
+        final Snapshot current = snapshot;
+        if (current != null && current.file.equals(file) && current.lastModified == file.lastModified() && current.length == file.length()) {
+            return current;
+        }
+
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        final Map<String, List<String>> options = new HashMap<>();
+        try (final Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            final Entry[] entries = new Gson().fromJson(reader, Entry[].class);
+            if (entries != null) {
+                for (final Entry entry : entries) {
+                    if (entry == null || entry.directory == null || entry.file == null) {
+                        continue;
+                    }
+                    final List<String> arguments = entry.arguments != null ? entry.arguments :
+                            entry.command != null ? ParametersListUtil.parse(entry.command) : null;
+                    if (arguments == null) {
+                        continue;
+                    }
+                    final String path = CppcheckRunner.normalizePath(resolve(entry.directory, entry.file));
+                    options.put(path, Collections.unmodifiableList(toCppcheckOptions(entry.directory, arguments)));
+                }
+            }
+        } catch (final IOException | JsonParseException ex) {
+            CppcheckNotification.send("could not read " + file.getAbsolutePath(),
+                    ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                    NotificationType.WARNING);
+        }
+
+        // also cache failures so a broken file is not read over and over again
+        snapshot = new Snapshot(file, lastModified, length, options);
+        return snapshot;
+    }
+
+    // the most recently generated compile_commands.json in the project directory or one of the build directories
+    // directly below it (e.g. cmake-build-debug)
+    @Nullable
+    private File find() {
+        final String basePath = project.getBasePath();
+        if (basePath == null) {
+            return null;
+        }
+        final File baseDir = new File(basePath);
+
+        File newest = null;
+        final List<File> candidates = new ArrayList<>();
+        candidates.add(new File(baseDir, FILE_NAME));
+        final File[] children = baseDir.listFiles(File::isDirectory);
+        if (children != null) {
+            for (final File child : children) {
+                candidates.add(new File(child, FILE_NAME));
+            }
+        }
+        for (final File candidate : candidates) {
+            if (candidate.isFile() && (newest == null || candidate.lastModified() > newest.lastModified())) {
+                newest = candidate;
+            }
+        }
+        return newest;
+    }
+
+    @NotNull
+    private static String resolve(@NotNull final String directory, @NotNull final String path) {
+        final File file = new File(path);
+        return file.isAbsolute() ? file.getPath() : new File(directory, path).getPath();
+    }
+
+    // translates the compiler arguments which affect the preprocessing - everything else is dropped
+    @NotNull
+    static List<String> toCppcheckOptions(@NotNull final String directory, @NotNull final List<String> arguments) {
+        final List<String> options = new ArrayList<>();
+        // skip the compiler itself
+        final Iterator<String> it = arguments.iterator();
+        // the /I, /D, /U and /std: options are only understood by the MSVC compatible compilers - they are paths otherwise
+        final boolean msvc = it.hasNext() && isMsvcCompiler(it.next());
+        while (it.hasNext()) {
+            final String arg = it.next();
+            if (arg.equals("-I") || arg.equals("-isystem") || arg.equals("-iquote")) {
+                if (it.hasNext()) {
+                    options.add("-I" + resolve(directory, it.next()));
+                }
+            }
+            else if (arg.startsWith("-I") || (msvc && arg.startsWith("/I"))) {
+                options.add("-I" + resolve(directory, arg.substring(2)));
+            }
+            else if (arg.startsWith("-isystem") || arg.startsWith("-iquote")) {
+                options.add("-I" + resolve(directory, arg.substring(arg.startsWith("-isystem") ? 8 : 7)));
+            }
+            else if (arg.equals("-D") || arg.equals("-U")) {
+                if (it.hasNext()) {
+                    options.add(arg + it.next());
+                }
+            }
+            else if (arg.startsWith("-D") || arg.startsWith("-U") || (msvc && (arg.startsWith("/D") || arg.startsWith("/U")))) {
+                options.add("-" + arg.substring(1));
+            }
+            else if (arg.equals("-include")) {
+                if (it.hasNext()) {
+                    options.add("--include=" + resolve(directory, it.next()));
+                }
+            }
+            else if (arg.startsWith("-std=") || (msvc && arg.startsWith("/std:"))) {
+                // gnu++17 -> c++17, c++latest is not supported
+                final String std = arg.substring(5).replace("gnu", "c");
+                if (STD_PATTERN.matcher(std).matches()) {
+                    options.add("--std=" + std);
+                }
+            }
+        }
+        return options;
+    }
+
+    // cl or clang-cl - with or without path and extension
+    private static boolean isMsvcCompiler(@NotNull final String compiler) {
+        String name = compiler.replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        if (name.endsWith(".exe")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return name.equals("cl") || name.equals("clang-cl");
+    }
+}
@@ -0,0 +1,274 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// learns how long the analysis of a file takes from the previous analyses - used for the timeouts, to fall back to a
+// reduced analysis for files which keep timing out and to order the files of the batch analysis
+// the history is stored on disk when the project is closed
+class CppcheckCostModel implements Disposable {
+    private static final int MAGIC = 0x43505054; // "CPPT"
+    // 2: the sizes are always in bytes
+    // 3: the options and the time of the timeout
+    private static final int VERSION = 3;
+    private static final int MAX_FILES = 10 * 1000;
+
+    // the timeout is a multiple of the expected duration within these bounds - the lower one only absorbs the startup
+    // and a busy machine since a timeout results in a reduced analysis
+    private static final long MIN_TIMEOUT_MS = 10 * 1000;
+    private static final long MAX_TIMEOUT_MS = 10 * 60 * 1000;
+    // used as long as no analysis of the file finished - an estimate based on the size alone is not reliable enough to
+    // go below it
+    static final long DEFAULT_TIMEOUT_MS = 60 * 1000;
+    // the timeout of a single invocation analyzing many files
+    private static final long MAX_BATCH_TIMEOUT_MS = 60 * 60 * 1000;
+    // the full analysis of a file which timed out is tried again after this time - the timeout might have been caused
+    // by a temporary load of the machine
+    private static final long REDUCED_MS = 30 * 60 * 1000;
+    private static final int TIMEOUT_FACTOR = 4;
+    // weight of the latest duration in the moving average
+    private static final double ALPHA = 0.3;
+    // a reduced file is analyzed fully again once it shrank by this factor
+    private static final double SHRINK_FACTOR = 0.75;
+
+    private static class Cost {
+        // the size of the file in bytes at the time of the latest analysis
+        long size;
+        // moving average of the duration of the full analysis - 0 if it never finished
+        double millis;
+        // the size the full analysis timed out at - 0 if it did not time out
+        long reducedSize;
+        // the hash of the options and the time (as System.currentTimeMillis()) the full analysis timed out with
+        int reducedOptions;
+        long reducedTime;
+    }
+
+    private final Path storagePath;
+    // by path - in least recently used order
+    private final LinkedHashMap<String, Cost> costs = new LinkedHashMap<>(16, 0.75f, true);
+    // moving average of the duration per byte over all files - used for files without history
+    private double millisPerByte = 0;
+    private boolean modified = false;
+
+    CppcheckCostModel(@NotNull final Project project) {
+        storagePath = Paths.get(PathManager.getSystemPath(), "cppcheck", project.getLocationHash() + ".costs");
+        load();
+    }
+
+    @NotNull
+    static CppcheckCostModel getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckCostModel.class);
+    }
+
+    // the size of the given contents of the file in bytes - the same unit as VirtualFile.getLength()
+    static long getSize(@NotNull final VirtualFile vFile, @NotNull final String text) {
+        return text.getBytes(vFile.getCharset()).length;
+    }
+
+    // only the durations of full analyses are recorded - the sizes are in bytes
+    synchronized void record(@NotNull final String path, final long size, final long wallNanos) {
+        final double millis = wallNanos / 1_000_000.0;
+        final Cost cost = getOrCreate(path);
+        cost.millis = cost.millis > 0 ? ALPHA * millis + (1 - ALPHA) * cost.millis : millis;
+        cost.size = size;
+        if (size > 0) {
+            final double rate = millis / size;
+            millisPerByte = millisPerByte > 0 ? ALPHA * rate + (1 - ALPHA) * millisPerByte : rate;
+        }
+        modified = true;
+    }
+
+    // the full analysis of the file with the given size and options timed out
+    synchronized void recordTimeout(@NotNull final String path, final long size, @NotNull final String optionsKey) {
+        final Cost cost = getOrCreate(path);
+        cost.size = size;
+        cost.reducedSize = Math.max(1, size);
+        cost.reducedOptions = optionsKey.hashCode();
+        cost.reducedTime = System.currentTimeMillis();
+        modified = true;
+    }
+
+    // whether the previous full analysis with the same options timed out recently and the file did not shrink
+    // considerably since then
+    synchronized boolean isReduced(@NotNull final String path, final long size, @NotNull final String optionsKey) {
+        final Cost cost = costs.get(path);
+        if (cost == null || cost.reducedSize == 0) {
+            return false;
+        }
+        final long elapsed = System.currentTimeMillis() - cost.reducedTime;
+        if (size < cost.reducedSize * SHRINK_FACTOR || elapsed < 0 || elapsed >= REDUCED_MS) {
+            cost.reducedSize = 0;
+            modified = true;
+            return false;
+        }
+        return cost.reducedOptions == optionsKey.hashCode();
+    }
+
+    // the expected duration in milliseconds - 0 if nothing is known yet
+    synchronized double estimate(@NotNull final String path, final long size) {
+        final Cost cost = costs.get(path);
+        if (cost != null && cost.millis > 0) {
+            // assume the duration scales with the size - limited since most of the time is spent in the includes
+            final double scale = cost.size > 0 && size > 0 ? Math.max(0.5, Math.min(4.0, (double)size / cost.size)) : 1.0;
+            return cost.millis * scale;
+        }
+        return millisPerByte * size;
+    }
+
+    long getTimeoutMillis(@NotNull final String path, final long size) {
+        final double estimate = estimate(path, size);
+        if (estimate <= 0) {
+            return DEFAULT_TIMEOUT_MS;
+        }
+        final long timeout = (long)(estimate * TIMEOUT_FACTOR);
+        return Math.max(hasDuration(path) ? MIN_TIMEOUT_MS : DEFAULT_TIMEOUT_MS, Math.min(MAX_TIMEOUT_MS, timeout));
+    }
+
+    // the timeout of a single invocation analyzing all the files with the given number of parallel jobs - it is at
+    // least the one of the longest file
+    long getTimeoutMillis(@NotNull final List<VirtualFile> files, final int jobs) {
+        long total = 0;
+        long longest = 0;
+        for (final VirtualFile vFile : files) {
+            final long timeout = getTimeoutMillis(vFile.getPath(), vFile.getLength());
+            total += timeout;
+            longest = Math.max(longest, timeout);
+        }
+        return Math.min(MAX_BATCH_TIMEOUT_MS, Math.max(longest, total / Math.max(1, jobs)));
+    }
+
+    private synchronized boolean hasDuration(@NotNull final String path) {
+        final Cost cost = costs.get(path);
+        return cost != null && cost.millis > 0;
+    }
+
+    // sorts the files by their expected duration starting with the longest one so the parallel jobs finish at about the
+    // same time
+    void sortLongestFirst(@NotNull final List<VirtualFile> files) {
+        final Map<VirtualFile, Double> estimates = new HashMap<>();
+        for (final VirtualFile vFile : files) {
+            estimates.put(vFile, estimate(vFile.getPath(), vFile.getLength()));
+        }
+        files.sort(Comparator.comparingDouble((VirtualFile vFile) -> estimates.get(vFile)).reversed());
+    }
+
+    // the options for a reduced analysis - returns null if the options cannot be reduced any further
+    @Nullable
+    static CppcheckCommandLine reduce(@NotNull final CppcheckCommandLine commandLine) {
+        final List<String> added = new ArrayList<>();
+        // the last occurrence of an option wins
+        if (!"--max-configs=1".equals(getLastOptionWithPrefix(commandLine, "--max-configs="))) {
+            added.add("--max-configs=1");
+        }
+        if ("--check-level=exhaustive".equals(getLastOptionWithPrefix(commandLine, "--check-level="))) {
+            added.add("--check-level=normal");
+        }
+        return added.isEmpty() ? null : commandLine.append(added);
+    }
+
+    @Nullable
+    private static String getLastOptionWithPrefix(@NotNull final CppcheckCommandLine commandLine, @NotNull final String prefix) {
+        String last = null;
+        for (final String parameter : commandLine.getParameters()) {
+            if (parameter.startsWith(prefix)) {
+                last = parameter;
+            }
+        }
+        return last;
+    }
+
+    @NotNull
+    private Cost getOrCreate(@NotNull final String path) {
+        Cost cost = costs.get(path);
+        if (cost == null) {
+            cost = new Cost();
+            costs.put(path, cost);
+            if (costs.size() > MAX_FILES) {
+                costs.remove(costs.keySet().iterator().next());
+            }
+        }
+        return cost;
+    }
+
+    private synchronized void load() {
+        if (!Files.isRegularFile(storagePath)) {
+            return;
+        }
+        try (final InputStream in = Files.newInputStream(storagePath)) {
+            final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                return;
+            }
+            millisPerByte = data.readDouble();
+            final int count = data.readInt();
+            for (int i = 0; i < count && i < MAX_FILES; ++i) {
+                final String path = data.readUTF();
+                final Cost cost = new Cost();
+                cost.size = data.readLong();
+                cost.millis = data.readDouble();
+                cost.reducedSize = data.readLong();
+                cost.reducedOptions = data.readInt();
+                cost.reducedTime = data.readLong();
+                costs.put(path, cost);
+            }
+        } catch (final IOException | RuntimeException ex) {
+            // the history is simply discarded
+            costs.clear();
+            millisPerByte = 0;
+        }
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (!modified) {
+            return;
+        }
+        try {
+            Files.createDirectories(storagePath.getParent());
+            final Path tempPath = storagePath.resolveSibling(storagePath.getFileName() + ".tmp");
+            try (final OutputStream out = Files.newOutputStream(tempPath)) {
+                final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeDouble(millisPerByte);
+                data.writeInt(costs.size());
+                for (final Map.Entry<String, Cost> entry : costs.entrySet()) {
+                    data.writeUTF(entry.getKey());
+                    data.writeLong(entry.getValue().size);
+                    data.writeDouble(entry.getValue().millis);
+                    data.writeLong(entry.getValue().reducedSize);
+                    data.writeInt(entry.getValue().reducedOptions);
+                    data.writeLong(entry.getValue().reducedTime);
+                }
+                data.flush();
+            }
+            Files.move(tempPath, storagePath, StandardCopyOption.REPLACE_EXISTING);
+            modified = false;
+        } catch (final IOException ignored) {
+            // the history is only an optimization
+        }
+    }
+}
@@ -3,8 +3,17 @@ package com.github.johnthagen.cppcheck;
 import org.jetbrains.annotations.NotNull;
 
 class CppcheckError extends Error {
+    // the process was killed because it exceeded its timeout
+    final boolean timeout;
+
     public CppcheckError(@NotNull final String message)
+    {
+        this(message, false);
+    }
+
+    public CppcheckError(@NotNull final String message, final boolean timeout)
     {
         super(message);
+        this.timeout = timeout;
     }
 }
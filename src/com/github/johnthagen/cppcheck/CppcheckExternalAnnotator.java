@@ -0,0 +1,198 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.codeInsight.daemon.HighlightDisplayKey;
+import com.intellij.lang.annotation.AnnotationHolder;
+import com.intellij.lang.annotation.ExternalAnnotator;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+// runs the on-the-fly analysis in the background so the highlighting does not have to wait for Cppcheck
+class CppcheckExternalAnnotator extends ExternalAnnotator<CppcheckExternalAnnotator.Input, CppcheckRunner.Result> {
+    // how often the highlighting is restarted to show the findings of a running analysis
+    private static final int PARTIAL_RESTART_INTERVAL_MS = 1000;
+
+    static class Input {
+        Input(@NotNull final PsiFile psiFile,
+              @NotNull final VirtualFile vFile,
+              @NotNull final Document document) {
+            this.psiFile = psiFile;
+            this.vFile = vFile;
+            this.document = document;
+            project = psiFile.getProject();
+            text = document.getText();
+            modificationStamp = document.getModificationStamp();
+        }
+
+        final PsiFile psiFile;
+        final Project project;
+        final VirtualFile vFile;
+        final Document document;
+        // snapshot of the document at the time the information was collected
+        final String text;
+        final long modificationStamp;
+    }
+
+    private static HighlightSeverity severityToHighlightSeverity(@NotNull final String severity) {
+        switch (severity) {
+            case "error":
+                return HighlightSeverity.ERROR;
+            case "warning":
+                return HighlightSeverity.WARNING;
+            case "style":
+            case "performance":
+            case "portability":
+            case "debug":
+            // INFORMATION problems are not shown in the IDE at all so we need to treat them as weak warnings
+            case "information":
+                return HighlightSeverity.WEAK_WARNING;
+
+            // If the severity is not understood (changes in Cppcheck), return ERROR.
+            default:
+                return HighlightSeverity.ERROR;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Input collectInformation(@NotNull final PsiFile file, @NotNull final Editor editor, final boolean hasErrors) {
+        final VirtualFile vFile = file.getVirtualFile();
+        if (vFile == null || !vFile.isInLocalFileSystem() || !SupportedExtensions.isCFamilyFile(vFile)) {
+            return null;
+        }
+
+        // honor the inspection settings
+        final HighlightDisplayKey key = HighlightDisplayKey.find(CppcheckInspection.SHORT_NAME);
+        if (key == null || !InspectionProjectProfileManager.getInstance(file.getProject()).getCurrentProfile().isToolEnabled(key, file)) {
+            return null;
+        }
+
+        final Document document = editor.getDocument();
+        if (document.getLineCount() == 0) {
+            return null;
+        }
+
+        return new Input(file, vFile, document);
+    }
+
+    @Nullable
+    @Override
+    public CppcheckRunner.Result doAnnotate(final Input collectedInfo) {
+        if (collectedInfo == null) {
+            return null;
+        }
+
+        // the background analysis of this state of the document might already be finished
+        CppcheckRunner.Result result = CppcheckFindingTracker.getResult(collectedInfo.document, collectedInfo.modificationStamp);
+        // the findings of the MISRA addon might have arrived in the meantime
+        if (result == null || result.incomplete) {
+            final CppcheckRunner.Result cachedResult = CppcheckRunner.getCachedResult(collectedInfo.project, collectedInfo.vFile, collectedInfo.text);
+            if (cachedResult != null) {
+                // each highlighting pass looks up the cache - only the first one for this state of the document is counted
+                if (result == null && !CppcheckFindingTracker.isTracked(collectedInfo.document, collectedInfo.modificationStamp)) {
+                    CppcheckMetrics.getInstance(collectedInfo.project).recordCacheHit(collectedInfo.vFile.getPath(), cachedResult.findings.size());
+                }
+                result = cachedResult;
+            }
+        }
+        if (result != null) {
+            CppcheckFindingTracker.track(collectedInfo.document, collectedInfo.modificationStamp, result.findings);
+            return result;
+        }
+
+        // show the previous findings at their new location right away along with the ones the running analysis
+        // reported so far - the highlighting is restarted when new findings arrive and when the analysis is finished
+        final List<CppcheckFinding> remappedFindings = CppcheckFindingTracker.remap(collectedInfo.document);
+        if (CppcheckFindingTracker.startAnalysis(collectedInfo.document, collectedInfo.modificationStamp)) {
+            ApplicationManager.getApplication().executeOnPooledThread(() -> analyzeInBackground(collectedInfo));
+        }
+        return new CppcheckRunner.Result(CppcheckFindingTracker.withPartialFindings(collectedInfo.document, collectedInfo.modificationStamp,
+                remappedFindings != null ? remappedFindings : Collections.emptyList()), Collections.emptyList());
+    }
+
+    private static void analyzeInBackground(@NotNull final Input input) {
+        // the first finding is shown right away - the following ones at most once per interval
+        final long[] lastRestart = {0};
+        final Disposable disposable = Disposer.newDisposable();
+        final ProgressIndicator indicator = CppcheckScheduler.createIndicator(input.project, input.document, input.modificationStamp, disposable);
+        final CppcheckRunner.Result result;
+        try {
+            result = ProgressManager.getInstance().runProcess(
+                    () -> CppcheckRunner.analyze(input.project, input.vFile, input.text, input.document, finding -> {
+                        if (!CppcheckFindingTracker.addPartialFinding(input.document, input.modificationStamp, finding)) {
+                            return;
+                        }
+                        final long now = System.currentTimeMillis();
+                        if (now - lastRestart[0] >= PARTIAL_RESTART_INTERVAL_MS) {
+                            lastRestart[0] = now;
+                            restart(input);
+                        }
+                    }),
+                    indicator);
+        } catch (final ProcessCanceledException ex) {
+            // the document was modified - the next highlighting pass will start a new analysis
+            CppcheckFindingTracker.abortAnalysis(input.document, input.modificationStamp);
+            return;
+        } finally {
+            Disposer.dispose(disposable);
+        }
+        CppcheckFindingTracker.finishAnalysis(input.document, input.modificationStamp, result);
+        restart(input);
+    }
+
+    private static void restart(@NotNull final Input input) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (input.project.isDisposed() || !input.psiFile.isValid() ||
+                    input.document.getModificationStamp() != input.modificationStamp) {
+                return;
+            }
+            DaemonCodeAnalyzer.getInstance(input.project).restart(input.psiFile);
+        });
+    }
+
+    @Override
+    public void apply(@NotNull final PsiFile file, final CppcheckRunner.Result annotationResult, @NotNull final AnnotationHolder holder) {
+        if (annotationResult == null) {
+            return;
+        }
+
+        final VirtualFile vFile = file.getVirtualFile();
+        final Document document = file.getViewProvider().getDocument();
+        if (vFile == null || document == null) {
+            return;
+        }
+
+        for (final String error : annotationResult.errors) {
+            holder.newAnnotation(HighlightSeverity.ERROR, error).range(file.getTextRange()).fileLevel().create();
+        }
+
+        for (final CppcheckFinding finding : annotationResult.findings) {
+            final TextRange range = CppCheckInspectionImpl.getLineRange(vFile, document, finding);
+            if (range == null) {
+                continue;
+            }
+
+            final String message = CppCheckInspectionImpl.formatMessage(finding);
+            final String tooltip = "<html>" + StringUtil.escapeXmlEntities(message).replace("\n", "<br/>") + "</html>";
+            holder.newAnnotation(severityToHighlightSeverity(finding.severity), message).range(range).tooltip(tooltip).create();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.johnthagen.cppcheck;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+// a single parsed <error> entry of the Cppcheck XML output - kept independent of the PSI so it can be cached
+class CppcheckFinding {
+    CppcheckFinding(@NotNull final String id,
+                    @NotNull final String severity,
+                    @NotNull final String msg,
+                    final boolean inconclusive,
+                    @NotNull final List<Location> locations) {
+        this.id = id;
+        this.severity = severity;
+        this.msg = msg;
+        this.inconclusive = inconclusive;
+        this.locations = locations;
+    }
+
+    static class Location
+    {
+        Location(@NotNull final String file,
+                 final boolean sourceFile,
+                 final int line,
+                 final int column,
+                 @Nullable final String info) {
+            this.file = file;
+            this.sourceFile = sourceFile;
+            this.line = line;
+            this.column = column;
+            this.info = info;
+        }
+
+        // the name of the file - the temporary file name is already replaced with the name of the analyzed file
+        final String file;
+        // the location is within the analyzed file
+        final boolean sourceFile;
+        final int line;
+        final int column;
+        final String info;
+    }
+
+    final String id;
+    final String severity;
+    final String msg;
+    final boolean inconclusive;
+    final List<Location> locations;
+}
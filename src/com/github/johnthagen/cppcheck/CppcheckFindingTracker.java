@@ -0,0 +1,283 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// anchors the findings of the latest analysis of a document with range markers so they can be shown at their new
+// location right after an edit while the actual re-analysis is still running
+class CppcheckFindingTracker {
+    private static class TrackedLocation {
+        TrackedLocation(@NotNull final RangeMarker marker, @NotNull final String text) {
+            this.marker = marker;
+            this.text = text;
+        }
+
+        final RangeMarker marker;
+        // the contents of the line at the time of the analysis
+        final String text;
+    }
+
+    private static class TrackedFinding {
+        TrackedFinding(@NotNull final CppcheckFinding finding, @NotNull final List<TrackedLocation> locations) {
+            this.finding = finding;
+            this.locations = locations;
+        }
+
+        final CppcheckFinding finding;
+        // null for locations outside of the document
+        final List<TrackedLocation> locations;
+    }
+
+    private static class Tracked {
+        long modificationStamp = -1;
+        List<TrackedFinding> findings = new ArrayList<>();
+        // the modification stamp the background analysis was started for
+        long analysisStamp = -1;
+        // the result of the latest background analysis
+        CppcheckRunner.Result analysisResult;
+        long analysisResultStamp = -1;
+        // the findings reported so far by the running background analysis
+        final List<CppcheckFinding> partialFindings = new ArrayList<>();
+        // a retried analysis reports the same findings again
+        final Set<String> partialIdentities = new HashSet<>();
+    }
+
+    // the tracking ends once the file is no longer open in any editor - the document itself might stay in memory
+    static class Listener implements FileEditorManagerListener {
+        @Override
+        public void fileClosed(@NotNull final FileEditorManager source, @NotNull final VirtualFile file) {
+            if (source.isFileOpen(file)) {
+                return;
+            }
+            final Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+            if (document != null) {
+                release(document);
+            }
+        }
+    }
+
+    // stored with the document so it goes away with it
+    private static final Key<Tracked> TRACKED_KEY = Key.create("CppcheckFindingTracker.Tracked");
+
+    @NotNull
+    private static Tracked getOrCreate(@NotNull final Document document) {
+        Tracked t = document.getUserData(TRACKED_KEY);
+        if (t == null) {
+            t = new Tracked();
+            document.putUserData(TRACKED_KEY, t);
+        }
+        return t;
+    }
+
+    // the findings have to belong to the given modification stamp of the document - they are discarded otherwise
+    static void track(@NotNull final Document document, final long modificationStamp, @NotNull final List<CppcheckFinding> findings) {
+        ApplicationManager.getApplication().runReadAction(() -> {
+            if (document.getModificationStamp() != modificationStamp) {
+                return;
+            }
+
+            final List<TrackedFinding> trackedFindings = new ArrayList<>(findings.size());
+            for (final CppcheckFinding finding : findings) {
+                final List<TrackedLocation> locations = new ArrayList<>(finding.locations.size());
+                for (final CppcheckFinding.Location location : finding.locations) {
+                    final int line = location.line - 1;
+                    if (!location.sourceFile || line < 0 || line >= document.getLineCount()) {
+                        locations.add(null);
+                        continue;
+                    }
+                    final TextRange range = TextRange.create(document.getLineStartOffset(line), document.getLineEndOffset(line));
+                    locations.add(new TrackedLocation(document.createRangeMarker(range), document.getText(range)));
+                }
+                trackedFindings.add(new TrackedFinding(finding, locations));
+            }
+
+            synchronized (CppcheckFindingTracker.class) {
+                final Tracked t = getOrCreate(document);
+                dispose(t.findings);
+                t.modificationStamp = modificationStamp;
+                t.findings = trackedFindings;
+                // the result of an older background analysis is not needed anymore
+                if (t.analysisResultStamp != modificationStamp) {
+                    t.analysisResult = null;
+                    t.analysisResultStamp = -1;
+                }
+            }
+        });
+    }
+
+    // returns the findings of the latest analysis at their current location - findings within modified lines are
+    // dropped. Returns null if the document was never analyzed.
+    @Nullable
+    static List<CppcheckFinding> remap(@NotNull final Document document) {
+        return ApplicationManager.getApplication().runReadAction(() -> {
+            synchronized (CppcheckFindingTracker.class) {
+                final Tracked t = document.getUserData(TRACKED_KEY);
+                if (t == null) {
+                    return null;
+                }
+
+                final List<CppcheckFinding> findings = new ArrayList<>(t.findings.size());
+                for (final TrackedFinding trackedFinding : t.findings) {
+                    if (t.modificationStamp == document.getModificationStamp()) {
+                        findings.add(trackedFinding.finding);
+                        continue;
+                    }
+
+                    final TrackedLocation primary = trackedFinding.locations.get(0);
+                    if (primary == null || !isUnchanged(document, primary)) {
+                        continue;
+                    }
+
+                    final List<CppcheckFinding.Location> locations = new ArrayList<>(trackedFinding.locations.size());
+                    for (int i = 0; i < trackedFinding.locations.size(); ++i) {
+                        final CppcheckFinding.Location location = trackedFinding.finding.locations.get(i);
+                        final TrackedLocation trackedLocation = trackedFinding.locations.get(i);
+                        final int line = trackedLocation != null && trackedLocation.marker.isValid() ?
+                                document.getLineNumber(trackedLocation.marker.getStartOffset()) + 1 : location.line;
+                        locations.add(new CppcheckFinding.Location(location.file, location.sourceFile, line, location.column, location.info));
+                    }
+                    final CppcheckFinding finding = trackedFinding.finding;
+                    findings.add(new CppcheckFinding(finding.id, finding.severity, finding.msg, finding.inconclusive, locations));
+                }
+                return findings;
+            }
+        });
+    }
+
+    private static boolean isUnchanged(@NotNull final Document document, @NotNull final TrackedLocation location) {
+        final RangeMarker marker = location.marker;
+        if (!marker.isValid() || marker.getEndOffset() > document.getTextLength()) {
+            return false;
+        }
+        return document.getText(TextRange.create(marker.getStartOffset(), marker.getEndOffset())).equals(location.text);
+    }
+
+    // whether the findings of the given modification stamp are already tracked
+    static synchronized boolean isTracked(@NotNull final Document document, final long modificationStamp) {
+        final Tracked t = document.getUserData(TRACKED_KEY);
+        return t != null && t.modificationStamp == modificationStamp;
+    }
+
+    // returns false if an analysis for this modification stamp was already started
+    static synchronized boolean startAnalysis(@NotNull final Document document, final long modificationStamp) {
+        final Tracked t = getOrCreate(document);
+        if (t.analysisStamp == modificationStamp) {
+            return false;
+        }
+        t.analysisStamp = modificationStamp;
+        t.analysisResult = null;
+        t.analysisResultStamp = -1;
+        t.partialFindings.clear();
+        t.partialIdentities.clear();
+        return true;
+    }
+
+    // allows the analysis to be started again for the same modification stamp
+    static synchronized void abortAnalysis(@NotNull final Document document, final long modificationStamp) {
+        final Tracked t = getOrCreate(document);
+        if (t.analysisStamp == modificationStamp) {
+            t.analysisStamp = -1;
+            t.partialFindings.clear();
+            t.partialIdentities.clear();
+        }
+    }
+
+    // returns false if the finding is obsolete because a newer analysis was started
+    static synchronized boolean addPartialFinding(@NotNull final Document document, final long modificationStamp, @NotNull final CppcheckFinding finding) {
+        final Tracked t = getOrCreate(document);
+        if (t.analysisStamp != modificationStamp) {
+            return false;
+        }
+        if (t.partialIdentities.add(getIdentity(finding))) {
+            t.partialFindings.add(finding);
+        }
+        return true;
+    }
+
+    // adds the findings reported so far by the running analysis of the given modification stamp to the remapped
+    // findings of the previous analysis - findings already known from the previous analysis are not duplicated
+    @NotNull
+    static synchronized List<CppcheckFinding> withPartialFindings(@NotNull final Document document,
+                                                                  final long modificationStamp,
+                                                                  @NotNull final List<CppcheckFinding> remappedFindings) {
+        final Tracked t = document.getUserData(TRACKED_KEY);
+        if (t == null || t.analysisStamp != modificationStamp || t.partialFindings.isEmpty()) {
+            return remappedFindings;
+        }
+        final Set<String> known = new HashSet<>();
+        for (final CppcheckFinding finding : remappedFindings) {
+            known.add(getIdentity(finding));
+        }
+        final List<CppcheckFinding> findings = new ArrayList<>(remappedFindings);
+        for (final CppcheckFinding finding : t.partialFindings) {
+            if (known.add(getIdentity(finding))) {
+                findings.add(finding);
+            }
+        }
+        return findings;
+    }
+
+    @NotNull
+    private static String getIdentity(@NotNull final CppcheckFinding finding) {
+        return finding.locations.get(0).line + ":" + finding.id + ":" + finding.msg;
+    }
+
+    // the result is dropped if the tracking ended or a newer analysis was started in the meantime
+    static synchronized void finishAnalysis(@NotNull final Document document, final long modificationStamp, @NotNull final CppcheckRunner.Result result) {
+        final Tracked t = document.getUserData(TRACKED_KEY);
+        if (t == null || t.analysisStamp != modificationStamp) {
+            return;
+        }
+        t.analysisResult = result;
+        t.analysisResultStamp = modificationStamp;
+        t.partialFindings.clear();
+        t.partialIdentities.clear();
+    }
+
+    // the result of the background analysis if it belongs to the given modification stamp
+    @Nullable
+    static synchronized CppcheckRunner.Result getResult(@NotNull final Document document, final long modificationStamp) {
+        final Tracked t = document.getUserData(TRACKED_KEY);
+        if (t == null || t.analysisResultStamp != modificationStamp) {
+            return null;
+        }
+        return t.analysisResult;
+    }
+
+    // drops the tracked findings and the result of the background analysis
+    static void release(@NotNull final Document document) {
+        ApplicationManager.getApplication().runReadAction(() -> {
+            synchronized (CppcheckFindingTracker.class) {
+                final Tracked t = document.getUserData(TRACKED_KEY);
+                if (t != null) {
+                    dispose(t.findings);
+                    document.putUserData(TRACKED_KEY, null);
+                }
+            }
+        });
+    }
+
+    private static void dispose(@NotNull final List<TrackedFinding> findings) {
+        for (final TrackedFinding finding : findings) {
+            for (final TrackedLocation location : finding.locations) {
+                if (location != null) {
+                    location.marker.dispose();
+                }
+            }
+        }
+    }
+}
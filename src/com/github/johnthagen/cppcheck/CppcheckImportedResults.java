@@ -0,0 +1,450 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// the findings of a Cppcheck --xml report created elsewhere (e.g. by the CI) for a revision of the git repository of the
+// project - they are stored by the hash of the contents of the file at that revision and used instead of a local
+// analysis as long as the file and all files it includes have the same contents and the binary and the options are the
+// same as at the time of the import.
+class CppcheckImportedResults {
+    // the included files whose contents are known - the hashes are only computed again once the files change
+    private static final int MAX_CONTENT_HASHES = 10000;
+
+    static class Summary {
+        int files;
+        int findings;
+        // the findings located in files which could not be found in the project or in the revision
+        int skipped;
+    }
+
+    private static class Imported {
+        Imported(@NotNull final List<CppcheckFinding> findings,
+                 @NotNull final Map<String, String> dependencies,
+                 @NotNull final String optionsKey) {
+            this.findings = findings;
+            this.dependencies = dependencies;
+            this.optionsKey = optionsKey;
+        }
+
+        final List<CppcheckFinding> findings;
+        // the hash of the contents at the revision of each file included by the file by its path
+        final Map<String, String> dependencies;
+        // the binary and the options the file was going to be analyzed with at the time of the import
+        final String optionsKey;
+    }
+
+    private final Project project;
+    // the findings by the hash of the name and the contents of the file
+    private Map<String, Imported> importedByHash = Collections.emptyMap();
+    // the suppressions applied during the import - the findings are not used anymore once they change
+    private String suppressions = "";
+    // the hash of the contents of each included file by its path and state on disk
+    private final Map<String, String> contentHashes = new HashMap<>();
+
+    CppcheckImportedResults(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckImportedResults getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckImportedResults.class);
+    }
+
+    // replaces the previously imported findings - the report is parsed while it is read so its size does not matter.
+    // The revision is the one the report was created for - the contents of the files are taken from it.
+    @NotNull
+    Summary importReport(@NotNull final File report,
+                         @NotNull final String revision,
+                         @NotNull final ProgressIndicator indicator) throws IOException, XMLStreamException {
+        final CppcheckSuppressions.Matcher matcher = CppcheckSuppressions.getInstance(project).getMatcher();
+        final CppCheckInspectionImpl inspectionImpl = new CppCheckInspectionImpl(0, matcher);
+        final String basePath = project.getBasePath();
+        final VirtualFile baseDir = basePath != null ? LocalFileSystem.getInstance().findFileByPath(basePath) : null;
+        if (baseDir == null) {
+            throw new IOException("the project has no base directory");
+        }
+
+        final Summary summary = new Summary();
+        // the local file of each reported path - null if it does not exist
+        final Map<String, VirtualFile> localFiles = new HashMap<>();
+        // a header might be reported for each source file including it
+        final Map<VirtualFile, Map<String, CppcheckFinding>> findingsByFile = new LinkedHashMap<>();
+        indicator.setIndeterminate(false);
+        indicator.setText("Cppcheck: importing " + report.getName());
+        try (final InputStream input = new ProgressInputStream(new BufferedInputStream(new FileInputStream(report)), report.length(), indicator)) {
+            inspectionImpl.parseOutput(input, finding -> {
+                final VirtualFile vFile = findLocalFile(localFiles, baseDir, finding.locations.get(0).file);
+                if (vFile == null) {
+                    ++summary.skipped;
+                    return;
+                }
+                final List<CppcheckFinding.Location> locations = new ArrayList<>(finding.locations.size());
+                for (final CppcheckFinding.Location location : finding.locations) {
+                    final VirtualFile locationFile = findLocalFile(localFiles, baseDir, location.file);
+                    locations.add(new CppcheckFinding.Location(locationFile != null ? locationFile.getName() : getFileName(location.file),
+                            vFile.equals(locationFile),
+                            location.line, location.column, location.info));
+                }
+                final CppcheckFinding.Location location = finding.locations.get(0);
+                findingsByFile.computeIfAbsent(vFile, f -> new LinkedHashMap<>()).putIfAbsent(
+                        location.line + ":" + location.column + ":" + finding.id + ":" + finding.msg,
+                        new CppcheckFinding(finding.id, finding.severity, finding.msg, finding.inconclusive, locations));
+            });
+        }
+
+        final Map<String, Imported> imported = new HashMap<>();
+        indicator.setIndeterminate(true);
+        indicator.setText("Cppcheck: reading the files of " + revision);
+        try (final GitRevision gitRevision = new GitRevision(new File(baseDir.getPath()), revision)) {
+            // the hash of the contents at the revision of each included file - null if it is not part of the revision
+            final Map<VirtualFile, String> revisionHashes = new HashMap<>();
+            for (final Map.Entry<VirtualFile, Map<String, CppcheckFinding>> entry : findingsByFile.entrySet()) {
+                indicator.checkCanceled();
+                final VirtualFile vFile = entry.getKey();
+                final String text = gitRevision.readFile(baseDir, vFile);
+                final String optionsKey = CppcheckRunner.getOptionsKey(project, vFile);
+                final Map<String, String> dependencies = text != null && optionsKey != null ?
+                        getRevisionDependencies(gitRevision, baseDir, vFile, revisionHashes) : null;
+                if (dependencies == null) {
+                    summary.skipped += entry.getValue().size();
+                    continue;
+                }
+                imported.put(hash(vFile, text), new Imported(new ArrayList<>(entry.getValue().values()), dependencies, optionsKey));
+                ++summary.files;
+                summary.findings += entry.getValue().size();
+            }
+        }
+
+        synchronized (this) {
+            importedByHash = imported;
+            suppressions = matcher.fingerprint;
+        }
+        return summary;
+    }
+
+    // the hashes of the files included by the file at the revision - null if one of them is not part of the revision.
+    // The included files outside of the project directory (e.g. system headers) are not under version control.
+    @Nullable
+    private Map<String, String> getRevisionDependencies(@NotNull final GitRevision gitRevision,
+                                                        @NotNull final VirtualFile baseDir,
+                                                        @NotNull final VirtualFile vFile,
+                                                        @NotNull final Map<VirtualFile, String> revisionHashes) throws IOException {
+        final Map<String, String> dependencies = new HashMap<>();
+        for (final VirtualFile dependency : CppcheckIncludeGraph.getInstance(project).getDependencies(vFile,
+                CppcheckRunner.getIncludeDirectories(project, vFile))) {
+            if (VfsUtilCore.getRelativePath(dependency, baseDir) == null) {
+                continue;
+            }
+            if (!revisionHashes.containsKey(dependency)) {
+                final String text = gitRevision.readFile(baseDir, dependency);
+                revisionHashes.put(dependency, text != null ? hash(text) : null);
+            }
+            final String hash = revisionHashes.get(dependency);
+            if (hash == null) {
+                return null;
+            }
+            dependencies.put(dependency.getPath(), hash);
+        }
+        return dependencies;
+    }
+
+    // the imported findings for the given contents of the file - null if the file was not part of the report, it or
+    // one of the files it includes has different contents or the binary, the options or the suppressions changed
+    @Nullable
+    List<CppcheckFinding> get(@NotNull final VirtualFile vFile,
+                              @NotNull final String text,
+                              @NotNull final String suppressions,
+                              @NotNull final String optionsKey) {
+        final Map<String, Imported> imported;
+        synchronized (this) {
+            if (importedByHash.isEmpty() || !this.suppressions.equals(suppressions)) {
+                return null;
+            }
+            imported = importedByHash;
+        }
+        final Imported entry = imported.get(hash(vFile, text));
+        if (entry == null || !entry.optionsKey.equals(optionsKey)) {
+            return null;
+        }
+        // Cppcheck reads the included files from disk
+        for (final Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+            final VirtualFile dependencyFile = LocalFileSystem.getInstance().findFileByPath(dependency.getKey());
+            if (dependencyFile == null || !dependency.getValue().equals(getContentHash(dependencyFile))) {
+                return null;
+            }
+        }
+        return entry.findings;
+    }
+
+    // the same for the contents of the file on disk
+    @Nullable
+    List<CppcheckFinding> get(@NotNull final VirtualFile vFile, @NotNull final String suppressions, @NotNull final String optionsKey) {
+        synchronized (this) {
+            if (importedByHash.isEmpty()) {
+                return null;
+            }
+        }
+        try {
+            return get(vFile, StringUtil.convertLineSeparators(VfsUtilCore.loadText(vFile)), suppressions, optionsKey);
+        } catch (final IOException ex) {
+            return null;
+        }
+    }
+
+    // the hash of the contents of the file on disk - null if it cannot be read
+    @Nullable
+    private String getContentHash(@NotNull final VirtualFile vFile) {
+        final String state = vFile.getPath() + ":" + vFile.getTimeStamp() + ":" + vFile.getLength();
+        synchronized (this) {
+            final String hash = contentHashes.get(state);
+            if (hash != null) {
+                return hash;
+            }
+        }
+        final String hash;
+        try {
+            hash = hash(StringUtil.convertLineSeparators(VfsUtilCore.loadText(vFile)));
+        } catch (final IOException ex) {
+            return null;
+        }
+        synchronized (this) {
+            if (contentHashes.size() >= MAX_CONTENT_HASHES) {
+                contentHashes.clear();
+            }
+            contentHashes.put(state, hash);
+        }
+        return hash;
+    }
+
+    // the report might have been created in another directory - the longest part of the path which exists within the
+    // project directory is used then
+    @Nullable
+    private static VirtualFile findLocalFile(@NotNull final Map<String, VirtualFile> localFiles,
+                                             @Nullable final VirtualFile baseDir,
+                                             @NotNull final String reportedPath) {
+        if (localFiles.containsKey(reportedPath)) {
+            return localFiles.get(reportedPath);
+        }
+        final String path = FileUtil.toSystemIndependentName(reportedPath);
+        VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(path);
+        if ((vFile == null || vFile.isDirectory()) && baseDir != null) {
+            vFile = null;
+            final String[] parts = StringUtil.trimStart(path, "/").split("/");
+            for (int i = 0; i < parts.length && vFile == null; ++i) {
+                final VirtualFile candidate = baseDir.findFileByRelativePath(String.join("/", Arrays.asList(parts).subList(i, parts.length)));
+                if (candidate != null && !candidate.isDirectory()) {
+                    vFile = candidate;
+                }
+            }
+        }
+        if (vFile != null && vFile.isDirectory()) {
+            vFile = null;
+        }
+        localFiles.put(reportedPath, vFile);
+        return vFile;
+    }
+
+    @NotNull
+    private static String getFileName(@NotNull final String path) {
+        final String independentPath = FileUtil.toSystemIndependentName(path);
+        return independentPath.substring(independentPath.lastIndexOf('/') + 1);
+    }
+
+    // the file name is included since it affects the language detection
+    @NotNull
+    private static String hash(@NotNull final VirtualFile vFile, @NotNull final String text) {
+        final MessageDigest digest = createDigest();
+        digest.update(vFile.getName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    @NotNull
+    private static String hash(@NotNull final String text) {
+        final MessageDigest digest = createDigest();
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    @NotNull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // reads the contents of the files at a revision - a single git process serves all of them
+    private static class GitRevision implements Closeable {
+        private final String revision;
+        private final Process process;
+        private final OutputStream requests;
+        private final InputStream responses;
+
+        GitRevision(@NotNull final File workDir, @NotNull final String revision) throws IOException {
+            this.revision = revision;
+            try {
+                process = new GeneralCommandLine("git", "cat-file", "--batch").withWorkDirectory(workDir).createProcess();
+            } catch (final ExecutionException ex) {
+                throw new IOException("could not run git: " + ex.getMessage(), ex);
+            }
+            requests = process.getOutputStream();
+            responses = new BufferedInputStream(process.getInputStream());
+            final byte[] commit;
+            try {
+                commit = read(revision + "^{commit}");
+            } catch (final IOException ex) {
+                close();
+                throw ex;
+            }
+            if (commit == null) {
+                close();
+                throw new IOException("unknown revision " + revision);
+            }
+        }
+
+        // the contents of the file at the revision - null if it is not part of it
+        @Nullable
+        String readFile(@NotNull final VirtualFile baseDir, @NotNull final VirtualFile vFile) throws IOException {
+            final String relativePath = VfsUtilCore.getRelativePath(vFile, baseDir);
+            if (relativePath == null) {
+                return null;
+            }
+            final byte[] content = read(revision + ":./" + relativePath);
+            if (content == null) {
+                return null;
+            }
+            final Charset charset = vFile.getCharset();
+            return StringUtil.convertLineSeparators(new String(content, charset != null ? charset : StandardCharsets.UTF_8));
+        }
+
+        // null if the object does not exist
+        @Nullable
+        private byte[] read(@NotNull final String object) throws IOException {
+            requests.write((object + "\n").getBytes(StandardCharsets.UTF_8));
+            requests.flush();
+            // "<object> missing" or "<hash> <type> <size>" followed by the contents and a newline
+            final String header = readLine();
+            final String[] parts = header.split(" ");
+            if (header.endsWith(" missing") || header.endsWith(" ambiguous") || parts.length != 3) {
+                return null;
+            }
+            final byte[] content;
+            try {
+                content = new byte[Integer.parseInt(parts[2])];
+            } catch (final NumberFormatException ex) {
+                throw new IOException("unexpected output of git: " + header, ex);
+            }
+            int read = 0;
+            while (read < content.length) {
+                final int count = responses.read(content, read, content.length - read);
+                if (count < 0) {
+                    throw new EOFException("git exited while reading " + object);
+                }
+                read += count;
+            }
+            if (responses.read() != '\n') {
+                throw new IOException("unexpected output of git after " + object);
+            }
+            return content;
+        }
+
+        @NotNull
+        private String readLine() throws IOException {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = responses.read()) != '\n') {
+                if (b < 0) {
+                    throw new EOFException("git exited unexpectedly - is the project directory a git repository?");
+                }
+                line.write(b);
+            }
+            return new String(line.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            // git exits once all requests were read
+            try {
+                requests.close();
+            } catch (final IOException ignored) {
+            }
+            process.destroy();
+        }
+    }
+
+    // reports the progress of reading the report and allows cancelling the import
+    private static class ProgressInputStream extends FilterInputStream {
+        private final long length;
+        private final ProgressIndicator indicator;
+        private long read = 0;
+
+        ProgressInputStream(@NotNull final InputStream in, final long length, @NotNull final ProgressIndicator indicator) {
+            super(in);
+            this.length = length;
+            this.indicator = indicator;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                progress(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+            final int count = super.read(b, off, len);
+            if (count > 0) {
+                progress(count);
+            }
+            return count;
+        }
+
+        private void progress(final int count) {
+            read += count;
+            indicator.checkCanceled();
+            if (length > 0) {
+                indicator.setFraction(Math.min(1.0, read / (double)length));
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// the #include relationships of the analyzed files as Cppcheck sees them on disk - the included files are part of the
+// cache key of a file so it is analyzed again when one of them changes. Open files depending on a changed file are
+// highlighted again. Each file is only parsed again once it changed.
+class CppcheckIncludeGraph implements Disposable {
+    private static final Pattern INCLUDE_PATTERN = Pattern.compile("^\\s*#\\s*include\\s*[\"<]([^\">]+)[\">]", Pattern.MULTILINE);
+    private static final int MAX_FILES = 20 * 1000;
+    // limits the files taken into account for a single file
+    private static final int MAX_DEPENDENCIES = 2000;
+
+    private static class Entry {
+        Entry(final long modificationStamp, @NotNull final List<String> includes) {
+            this.modificationStamp = modificationStamp;
+            this.includes = includes;
+        }
+
+        final long modificationStamp;
+        final List<String> includes;
+        // the included files found with the include directories of resolvedKey as of resolvedCount
+        List<VirtualFile> resolved;
+        String resolvedKey;
+        long resolvedCount = -1;
+    }
+
+    private final Project project;
+    // in least recently used order
+    private final LinkedHashMap<VirtualFile, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // the include directories of the files analyzed on the fly - used to find the open files depending on a change
+    private final Map<VirtualFile, List<String>> includeDirsByFile = new HashMap<>();
+    // incremented when files are created, deleted, moved or renamed since the includes might resolve differently then
+    private long structureCount = 0;
+
+    CppcheckIncludeGraph(@NotNull final Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull final List<? extends VFileEvent> events) {
+                filesChanged(events);
+            }
+        });
+    }
+
+    @NotNull
+    static CppcheckIncludeGraph getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckIncludeGraph.class);
+    }
+
+    @NotNull
+    static List<String> parseIncludes(@NotNull final CharSequence text) {
+        final List<String> includes = new ArrayList<>();
+        final Matcher matcher = INCLUDE_PATTERN.matcher(text);
+        while (matcher.find()) {
+            includes.add(matcher.group(1).replace('\\', '/'));
+        }
+        return includes;
+    }
+
+    // the -I options in either form
+    @NotNull
+    static List<String> getIncludeDirectories(@NotNull final CppcheckCommandLine commandLine) {
+        final List<String> dirs = new ArrayList<>();
+        final List<String> parameters = commandLine.getParameters();
+        for (int i = 0; i < parameters.size(); ++i) {
+            final String parameter = parameters.get(i);
+            if (parameter.equals("-I") && i + 1 < parameters.size()) {
+                dirs.add(parameters.get(++i));
+            }
+            else if (parameter.startsWith("-I")) {
+                dirs.add(parameter.substring(2));
+            }
+        }
+        return dirs;
+    }
+
+    // identifies the state on disk of all files included by the text of the file - directly or indirectly
+    @NotNull
+    String getFingerprint(@NotNull final VirtualFile vFile, @NotNull final CharSequence text, @NotNull final List<String> includeDirs) {
+        synchronized (this) {
+            includeDirsByFile.put(vFile, includeDirs);
+        }
+        return getFingerprint(getDependencies(vFile, resolve(vFile, parseIncludes(text), includeDirs), includeDirs));
+    }
+
+    // the same for the contents of the file on disk
+    @NotNull
+    String getFingerprint(@NotNull final VirtualFile vFile, @NotNull final List<String> includeDirs) {
+        return getFingerprint(getDependencies(vFile, getResolvedIncludes(vFile, includeDirs), includeDirs));
+    }
+
+    @NotNull
+    private static String getFingerprint(@NotNull final Set<VirtualFile> dependencies) {
+        final Set<String> states = new TreeSet<>();
+        for (final VirtualFile dependency : dependencies) {
+            states.add(dependency.getPath() + ":" + dependency.getTimeStamp() + ":" + dependency.getLength());
+        }
+        return String.join("\n", states);
+    }
+
+    // all files included by the contents of the file on disk - directly or indirectly
+    @NotNull
+    Set<VirtualFile> getDependencies(@NotNull final VirtualFile vFile, @NotNull final List<String> includeDirs) {
+        return getDependencies(vFile, getResolvedIncludes(vFile, includeDirs), includeDirs);
+    }
+
+    // the files directly included by the file and the ones included by them
+    @NotNull
+    private Set<VirtualFile> getDependencies(@NotNull final VirtualFile vFile,
+                                             @NotNull final List<VirtualFile> included,
+                                             @NotNull final List<String> includeDirs) {
+        final Set<VirtualFile> dependencies = new LinkedHashSet<>();
+        final Deque<VirtualFile> pending = new ArrayDeque<>(included);
+        while (!pending.isEmpty() && dependencies.size() < MAX_DEPENDENCIES) {
+            final VirtualFile dependency = pending.removeFirst();
+            if (dependency.equals(vFile) || !dependencies.add(dependency)) {
+                continue;
+            }
+            pending.addAll(getResolvedIncludes(dependency, includeDirs));
+        }
+        return dependencies;
+    }
+
+    // the files directly included by the contents of the file on disk
+    @NotNull
+    List<VirtualFile> getIncludedFiles(@NotNull final VirtualFile vFile, @NotNull final List<String> includeDirs) {
+        return getResolvedIncludes(vFile, includeDirs);
+    }
+
+    @NotNull
+    private List<VirtualFile> getResolvedIncludes(@NotNull final VirtualFile vFile, @NotNull final List<String> includeDirs) {
+        final String key = String.join("\n", includeDirs);
+        final long stamp = vFile.getModificationStamp();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(vFile);
+            if (entry != null && entry.modificationStamp == stamp && entry.resolved != null &&
+                    entry.resolvedCount == structureCount && key.equals(entry.resolvedKey)) {
+                return entry.resolved;
+            }
+        }
+
+        if (entry == null || entry.modificationStamp != stamp) {
+            List<String> includes;
+            try {
+                includes = parseIncludes(VfsUtilCore.loadText(vFile));
+            } catch (final IOException e) {
+                includes = Collections.emptyList();
+            }
+            entry = new Entry(stamp, includes);
+        }
+        final long count;
+        synchronized (this) {
+            count = structureCount;
+        }
+        final List<VirtualFile> resolved = resolve(vFile, entry.includes, includeDirs);
+
+        synchronized (this) {
+            entry.resolved = resolved;
+            entry.resolvedKey = key;
+            entry.resolvedCount = count;
+            entries.put(vFile, entry);
+            if (entries.size() > MAX_FILES) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+        return resolved;
+    }
+
+    // the same lookup as Cppcheck performs - relative to the including file and then within the include directories
+    // includes which cannot be found (e.g. system includes) are skipped
+    @NotNull
+    private static List<VirtualFile> resolve(@NotNull final VirtualFile vFile,
+                                             @NotNull final List<String> includes,
+                                             @NotNull final List<String> includeDirs) {
+        final List<VirtualFile> dirs = new ArrayList<>(includeDirs.size() + 1);
+        if (vFile.getParent() != null) {
+            dirs.add(vFile.getParent());
+        }
+        for (final String includeDir : includeDirs) {
+            final VirtualFile dir = LocalFileSystem.getInstance().findFileByPath(includeDir);
+            if (dir != null && dir.isDirectory()) {
+                dirs.add(dir);
+            }
+        }
+
+        final List<VirtualFile> resolved = new ArrayList<>(includes.size());
+        for (final String include : includes) {
+            for (final VirtualFile dir : dirs) {
+                final VirtualFile included = dir.findFileByRelativePath(include);
+                if (included != null && !included.isDirectory()) {
+                    resolved.add(included);
+                    break;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    private void filesChanged(@NotNull final List<? extends VFileEvent> events) {
+        final Set<VirtualFile> changed = new HashSet<>();
+        boolean structureChanged = false;
+        for (final VFileEvent event : events) {
+            final VirtualFile vFile = event.getFile();
+            if (vFile == null || vFile.isDirectory() || !SupportedExtensions.isCFamilyFile(vFile)) {
+                continue;
+            }
+            if (event instanceof VFileContentChangeEvent) {
+                changed.add(vFile);
+            }
+            else {
+                structureChanged = true;
+            }
+        }
+        if (structureChanged) {
+            synchronized (this) {
+                ++structureCount;
+            }
+        }
+        else if (changed.isEmpty()) {
+            return;
+        }
+        final boolean allDependents = structureChanged;
+
+        // the open files are highlighted again which analyzes them again since their cache key changed - in the
+        // background since the includes might have to be read
+        final VirtualFile[] openFiles = FileEditorManager.getInstance(project).getOpenFiles();
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            final List<VirtualFile> dependents = new ArrayList<>();
+            for (final VirtualFile openFile : openFiles) {
+                final List<String> includeDirs;
+                synchronized (this) {
+                    includeDirs = includeDirsByFile.get(openFile);
+                }
+                if (includeDirs == null || changed.contains(openFile) || !openFile.isValid()) {
+                    continue;
+                }
+                final Set<VirtualFile> dependencies = getDependencies(openFile, getResolvedIncludes(openFile, includeDirs), includeDirs);
+                if (allDependents || !Collections.disjoint(dependencies, changed)) {
+                    dependents.add(openFile);
+                }
+            }
+            if (dependents.isEmpty()) {
+                return;
+            }
+            ApplicationManager.getApplication().invokeLater(() -> {
+                if (project.isDisposed()) {
+                    return;
+                }
+                for (final VirtualFile dependent : dependents) {
+                    final PsiFile psiFile = dependent.isValid() ? PsiManager.getInstance(project).findFile(dependent) : null;
+                    if (psiFile != null) {
+                        DaemonCodeAnalyzer.getInstance(project).restart(psiFile);
+                    }
+                }
+            });
+        });
+    }
+
+    @Override
+    public synchronized void dispose() {
+        entries.clear();
+        includeDirsByFile.clear();
+    }
+}
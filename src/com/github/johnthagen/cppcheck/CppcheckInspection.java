@@ -1,32 +1,42 @@
 package com.github.johnthagen.cppcheck;
 
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.CommonProblemDescriptor;
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.GlobalInspectionTool;
 import com.intellij.codeInspection.InspectionManager;
-import com.intellij.codeInspection.LocalInspectionTool;
+import com.intellij.codeInspection.ProblemDescriptionsProcessor;
 import com.intellij.codeInspection.ProblemDescriptor;
 import com.intellij.codeInspection.ProblemHighlightType;
-import com.intellij.execution.ExecutionException;
-import com.intellij.notification.NotificationType;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.TextRange;
-import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
-import org.apache.commons.lang3.RandomStringUtils;
+import com.intellij.psi.PsiManager;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-class CppcheckInspection extends LocalInspectionTool {
-    final static Path LATEST_RESULT_FILE = Paths.get(FileUtil.getTempDirectory(), "clion-cppcheck-latest.xml");
+// the on-the-fly analysis is performed by CppcheckExternalAnnotator - this is only used by "Inspect Code"
+class CppcheckInspection extends GlobalInspectionTool {
+    final static String SHORT_NAME = "CppcheckInspection";
 
     private static ProblemDescriptor createProblemDescriptor(@NotNull final PsiFile file,
                                                              @NotNull final InspectionManager manager,
@@ -39,96 +49,116 @@ class CppcheckInspection extends LocalInspectionTool {
                 true);
     }
 
-    @Nullable
     @Override
-    public ProblemDescriptor[] checkFile(@NotNull final PsiFile file,
-                                         @NotNull final InspectionManager manager,
-                                         final boolean isOnTheFly) {
-        final VirtualFile vFile = file.getVirtualFile();
-        if (vFile == null || !vFile.isInLocalFileSystem() || !SupportedExtensions.isCFamilyFile(vFile)) {
-            return ProblemDescriptor.EMPTY_ARRAY;
-        }
-
-        final Document document = FileDocumentManager.getInstance().getDocument(vFile);
-        if (document == null || document.getLineCount() == 0) {
-            return ProblemDescriptor.EMPTY_ARRAY;
-        }
+    public boolean isGraphNeeded() {
+        return false;
+    }
 
-        final String cppcheckPath = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_PATH);
-        if (cppcheckPath == null || cppcheckPath.isEmpty()) {
-            final ProblemDescriptor problemDescriptor = createProblemDescriptor(file, manager, "Please set 'Cppcheck Path' in 'Cppcheck Configuration'.");
-            return new ProblemDescriptor[]{problemDescriptor};
-        }
+    // the analysis is performed outside of the read action - only the results are gathered within one
+    @Override
+    public boolean isReadActionNeeded() {
+        return false;
+    }
 
-        final File cppcheckPathFile = new File(cppcheckPath);
-        if (!cppcheckPathFile.exists()) {
-            final ProblemDescriptor problemDescriptor = createProblemDescriptor(file, manager, "Configured 'Cppcheck Path' in 'Cppcheck Configuration' does not exist: " + cppcheckPathFile.getAbsolutePath());
-            return new ProblemDescriptor[]{problemDescriptor};
+    @Override
+    public void runInspection(@NotNull final AnalysisScope scope,
+                              @NotNull final InspectionManager manager,
+                              @NotNull final GlobalInspectionContext globalContext,
+                              @NotNull final ProblemDescriptionsProcessor problemDescriptionsProcessor) {
+        final Project project = globalContext.getProject();
+        final FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(project).getFileIndex();
+
+        // files with unsaved changes are analyzed individually with the contents of the editor
+        final List<VirtualFile> files = new ArrayList<>();
+        final Set<VirtualFile> modifiedFiles = new LinkedHashSet<>();
+        ApplicationManager.getApplication().runReadAction(() -> {
+            scope.accept(vFile -> {
+                if (!vFile.isInLocalFileSystem() || !SupportedExtensions.isCFamilyFile(vFile)) {
+                    return true;
+                }
+                if (documentManager.isFileModified(vFile)) {
+                    modifiedFiles.add(vFile);
+                }
+                else {
+                    files.add(vFile);
+                }
+                return true;
+            });
+        });
+
+        final ProgressIndicator progressIndicator = ProgressManager.getInstance().getProgressIndicator();
+        final ProgressIndicator indicator = progressIndicator != null ? progressIndicator : new EmptyProgressIndicator();
+
+        if (!files.isEmpty()) {
+            // each finding is reported as soon as Cppcheck emits it so the results show up while the analysis is
+            // still running - findings in included headers are reported as well as long as they belong to the project
+            final Map<String, VirtualFile> filesByPath = new HashMap<>();
+            // the modified files are analyzed separately so the batch does not cover the whole scope then
+            final List<String> errors = CppcheckRunner.analyzeFiles(project, files, modifiedFiles.isEmpty(), indicator, (path, finding) -> {
+                final VirtualFile vFile = filesByPath.computeIfAbsent(path, p -> LocalFileSystem.getInstance().findFileByPath(p));
+                if (vFile == null || modifiedFiles.contains(vFile)) {
+                    return;
+                }
+                ApplicationManager.getApplication().runReadAction(() -> {
+                    if (!fileIndex.isInContent(vFile)) {
+                        return;
+                    }
+                    final PsiFile psiFile = PsiManager.getInstance(project).findFile(vFile);
+                    final Document document = documentManager.getDocument(vFile);
+                    if (psiFile == null || document == null) {
+                        return;
+                    }
+                    final List<ProblemDescriptor> descriptors = CppCheckInspectionImpl.createProblemDescriptors(psiFile, manager, document,
+                            Collections.singletonList(finding));
+                    addProblems(globalContext, problemDescriptionsProcessor, psiFile, descriptors);
+                });
+            });
+            for (final String error : errors) {
+                problemDescriptionsProcessor.addProblemElement(globalContext.getRefManager().getRefProject(),
+                        manager.createProblemDescriptor(error));
+            }
         }
 
-        final ArrayList<ProblemDescriptor> descriptors = new ArrayList<>();
-
-        String cppcheckOptions = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_OPTIONS);
-
-        final String cppcheckMisraPath = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_MISRA_PATH);
-        if (cppcheckMisraPath != null && !cppcheckMisraPath.isEmpty()) {
-            final File cppcheckMisraPathFile = new File(cppcheckMisraPath);
-            if (!cppcheckMisraPathFile.exists()) {
-                final ProblemDescriptor problemDescriptor = createProblemDescriptor(file, manager, "Configured 'MISRA Addon JSON' in 'Cppcheck Configuration' does not exist: " + cppcheckMisraPathFile.getAbsolutePath());
-                descriptors.add(problemDescriptor);
+        for (final VirtualFile vFile : modifiedFiles) {
+            indicator.checkCanceled();
+            final Document document = ApplicationManager.getApplication().runReadAction(
+                    (Computable<Document>) () -> documentManager.getDocument(vFile));
+            if (document == null) {
+                continue;
             }
-            else {
-                cppcheckOptions = String.format("%s --addon=%s", cppcheckOptions, cppcheckMisraPath);
+            final String text = ApplicationManager.getApplication().runReadAction((Computable<String>) document::getText);
+            if (text.isEmpty()) {
+                continue;
             }
-        }
-        cppcheckOptions = String.format("%s --xml", cppcheckOptions);
 
-        int verboseLevel = 0;
-        final String cppcheckVerboseLevel = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_VERBOSE_LEVEL);
-        if (cppcheckVerboseLevel != null && !cppcheckVerboseLevel.isEmpty()) {
-            verboseLevel = Integer.parseInt(cppcheckVerboseLevel);
+            final CppcheckRunner.Result result = CppcheckRunner.analyze(project, vFile, text, null);
+
+            ApplicationManager.getApplication().runReadAction(() -> {
+                final PsiFile psiFile = PsiManager.getInstance(project).findFile(vFile);
+                if (psiFile == null) {
+                    return;
+                }
+                final List<ProblemDescriptor> descriptors = new ArrayList<>();
+                for (final String error : result.errors) {
+                    descriptors.add(createProblemDescriptor(psiFile, manager, error));
+                }
+                descriptors.addAll(CppCheckInspectionImpl.createProblemDescriptors(psiFile, manager, document, result.findings));
+                addProblems(globalContext, problemDescriptionsProcessor, psiFile, descriptors);
+            });
         }
-
-        File tempFile = null;
-        try {
-            final CppCheckInspectionImpl inspectionImpl = new CppCheckInspectionImpl(verboseLevel);
-            tempFile = FileUtil.createTempFile(RandomStringUtils.randomAlphanumeric(8) + "_", vFile.getName(), true);
-            FileUtil.writeToFile(tempFile, document.getText());
-            final String cppcheckOutput =
-                    inspectionImpl.executeCommandOnFile(vFile, cppcheckPathFile, prependIncludeDir(cppcheckOptions, vFile),
-                            tempFile, cppcheckMisraPath);
-
-            // store the output of the latest analysis
-            FileUtil.writeToFile(LATEST_RESULT_FILE.toFile(), cppcheckOutput);
-
-            final List<ProblemDescriptor> descriptorsList = inspectionImpl.parseOutput(file, manager, document, cppcheckOutput,
-                    tempFile.getName());
-            descriptors.addAll(descriptorsList);
-        } catch (final ExecutionException | CppcheckError | IOException | SAXException | ParserConfigurationException ex) {
-            CppcheckNotification.send("execution failed for " + vFile.getCanonicalPath(),
-                    ex.getClass().getSimpleName() + ": " + ex.getMessage(),
-                    NotificationType.ERROR);
-            final ProblemDescriptor problemDescriptor = createProblemDescriptor(file, manager, "Cppcheck execution failed: " + ex.getClass().getSimpleName() + ": " + ex.getMessage().split("\n", 2)[0]);
-            descriptors.add(problemDescriptor);
-        } finally {
-            if (tempFile != null) {
-                FileUtil.delete(tempFile);
-            }
-        }
-
-        return descriptors.toArray(new ProblemDescriptor[0]);
     }
 
-    @NotNull
-    private static String prependIncludeDir(@NotNull final String cppcheckOptions, @NotNull final VirtualFile vFile) {
-        final VirtualFile dir = vFile.getParent();
-        if (dir == null) {
-            return cppcheckOptions;
+    private static void addProblems(@NotNull final GlobalInspectionContext globalContext,
+                                    @NotNull final ProblemDescriptionsProcessor problemDescriptionsProcessor,
+                                    @NotNull final PsiFile psiFile,
+                                    @NotNull final List<ProblemDescriptor> descriptors) {
+        if (descriptors.isEmpty()) {
+            return;
         }
-        final String path = dir.getCanonicalPath();
-        if (path == null) {
-            return cppcheckOptions;
+        final RefElement refElement = globalContext.getRefManager().getReference(psiFile);
+        if (refElement != null) {
+            problemDescriptionsProcessor.addProblemElement(refElement, descriptors.toArray(new CommonProblemDescriptor[0]));
         }
-        return String.format("-I\"%s\" %s", path, cppcheckOptions);
     }
 }
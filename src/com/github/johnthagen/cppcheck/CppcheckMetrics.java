@@ -0,0 +1,189 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// collects timings of the analyses performed within a project - only the latest samples of each file are kept
+class CppcheckMetrics {
+    private static final int MAX_SAMPLES_PER_FILE = 100;
+    private static final int MAX_FILES = 2000;
+
+    interface Listener {
+        void metricsChanged();
+    }
+
+    static final Topic<Listener> TOPIC = Topic.create("Cppcheck metrics", Listener.class);
+
+    // filled in by the execution of a Cppcheck process
+    static class Execution {
+        // time until the process was created
+        long spawnNanos;
+        // time from the creation of the process until it exited
+        long wallNanos;
+        // size of the --xml output
+        long outputBytes;
+        // time spent in the parser without waiting for the output
+        long parseNanos;
+    }
+
+    private static class Sample {
+        Sample(final boolean cacheHit, @Nullable final Execution execution, final int findings) {
+            this.cacheHit = cacheHit;
+            this.execution = execution;
+            this.findings = findings;
+        }
+
+        final boolean cacheHit;
+        // null for cache hits
+        final Execution execution;
+        final int findings;
+    }
+
+    // aggregated samples of a single file or the whole project - times are in milliseconds
+    static class Summary {
+        String file;
+        int runs;
+        int cacheHits;
+        int executions;
+        double wallP50;
+        double wallP90;
+        double wallP99;
+        double wallMax;
+        double spawnP50;
+        double parseP50;
+        long outputBytesP50;
+        int lastFindings;
+    }
+
+    private final Project project;
+    // by file - in least recently used order
+    private final LinkedHashMap<String, Deque<Sample>> samples = new LinkedHashMap<>(16, 0.75f, true);
+
+    CppcheckMetrics(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckMetrics getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckMetrics.class);
+    }
+
+    void recordCacheHit(@NotNull final String file, final int findings) {
+        record(file, new Sample(true, null, findings));
+    }
+
+    void recordExecution(@NotNull final String file, @NotNull final Execution execution, final int findings) {
+        record(file, new Sample(false, execution, findings));
+    }
+
+    private void record(@NotNull final String file, @NotNull final Sample sample) {
+        synchronized (this) {
+            final Deque<Sample> fileSamples = samples.computeIfAbsent(file, f -> new ArrayDeque<>());
+            fileSamples.addLast(sample);
+            if (fileSamples.size() > MAX_SAMPLES_PER_FILE) {
+                fileSamples.removeFirst();
+            }
+            if (samples.size() > MAX_FILES) {
+                samples.remove(samples.keySet().iterator().next());
+            }
+        }
+        if (!project.isDisposed()) {
+            project.getMessageBus().syncPublisher(TOPIC).metricsChanged();
+        }
+    }
+
+    synchronized void clear() {
+        samples.clear();
+    }
+
+    // the summary of the whole project comes first
+    @NotNull
+    List<Summary> getSummaries() {
+        final Map<String, List<Sample>> copy = new LinkedHashMap<>();
+        synchronized (this) {
+            for (final Map.Entry<String, Deque<Sample>> entry : samples.entrySet()) {
+                copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+        }
+
+        final List<Summary> summaries = new ArrayList<>(copy.size() + 1);
+        final List<Sample> all = new ArrayList<>();
+        for (final Map.Entry<String, List<Sample>> entry : copy.entrySet()) {
+            summaries.add(summarize(entry.getKey(), entry.getValue()));
+            all.addAll(entry.getValue());
+        }
+        summaries.sort((a, b) -> Double.compare(b.wallP90, a.wallP90));
+        summaries.add(0, summarize("<project>", all));
+        return summaries;
+    }
+
+    @NotNull
+    private static Summary summarize(@NotNull final String file, @NotNull final List<Sample> fileSamples) {
+        final Summary summary = new Summary();
+        summary.file = file;
+        summary.runs = fileSamples.size();
+
+        final List<Execution> executions = new ArrayList<>(fileSamples.size());
+        for (final Sample sample : fileSamples) {
+            if (sample.cacheHit) {
+                ++summary.cacheHits;
+            }
+            else {
+                executions.add(sample.execution);
+            }
+        }
+        summary.executions = executions.size();
+        if (!fileSamples.isEmpty()) {
+            summary.lastFindings = fileSamples.get(fileSamples.size() - 1).findings;
+        }
+        if (executions.isEmpty()) {
+            return summary;
+        }
+
+        final long[] wall = new long[executions.size()];
+        final long[] spawn = new long[executions.size()];
+        final long[] parse = new long[executions.size()];
+        final long[] output = new long[executions.size()];
+        for (int i = 0; i < executions.size(); ++i) {
+            final Execution execution = executions.get(i);
+            wall[i] = execution.wallNanos;
+            spawn[i] = execution.spawnNanos;
+            parse[i] = execution.parseNanos;
+            output[i] = execution.outputBytes;
+        }
+        Arrays.sort(wall);
+        Arrays.sort(spawn);
+        Arrays.sort(parse);
+        Arrays.sort(output);
+
+        summary.wallP50 = toMillis(percentile(wall, 50));
+        summary.wallP90 = toMillis(percentile(wall, 90));
+        summary.wallP99 = toMillis(percentile(wall, 99));
+        summary.wallMax = toMillis(wall[wall.length - 1]);
+        summary.spawnP50 = toMillis(percentile(spawn, 50));
+        summary.parseP50 = toMillis(percentile(parse, 50));
+        summary.outputBytesP50 = percentile(output, 50);
+        return summary;
+    }
+
+    // nearest-rank percentile of sorted values
+    private static long percentile(@NotNull final long[] sorted, final int percentile) {
+        final int rank = (int)Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double toMillis(final long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.johnthagen.cppcheck;
+
+import com.google.gson.GsonBuilder;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.table.JBTable;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// shows the CppcheckMetrics of the project
+class CppcheckMetricsToolWindowFactory implements ToolWindowFactory, DumbAware {
+    private static final String[] COLUMNS = {
+            "File", "Runs", "Cache Hits", "Executions", "Wall p50 (ms)", "Wall p90 (ms)", "Wall p99 (ms)", "Wall Max (ms)",
+            "Spawn p50 (ms)", "Parse p50 (ms)", "Output p50 (bytes)", "Findings"
+    };
+
+    @Override
+    public void createToolWindowContent(@NotNull final Project project, @NotNull final ToolWindow toolWindow) {
+        final DefaultTableModel model = new DefaultTableModel(COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(final int row, final int column) {
+                return false;
+            }
+        };
+        final JBTable table = new JBTable(model);
+
+        final Runnable refresh = () -> {
+            model.setRowCount(0);
+            for (final CppcheckMetrics.Summary summary : CppcheckMetrics.getInstance(project).getSummaries()) {
+                model.addRow(toRow(summary));
+            }
+        };
+
+        final JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh.run());
+        final JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(e -> {
+            CppcheckMetrics.getInstance(project).clear();
+            refresh.run();
+        });
+        final JButton exportJsonButton = new JButton("Export JSON...");
+        exportJsonButton.addActionListener(e -> export(project, "json"));
+        final JButton exportCsvButton = new JButton("Export CSV...");
+        exportCsvButton.addActionListener(e -> export(project, "csv"));
+
+        final JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttonPanel.add(refreshButton);
+        buttonPanel.add(clearButton);
+        buttonPanel.add(exportJsonButton);
+        buttonPanel.add(exportCsvButton);
+
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.add(buttonPanel, BorderLayout.NORTH);
+        panel.add(new JBScrollPane(table), BorderLayout.CENTER);
+
+        final Content content = ContentFactory.SERVICE.getInstance().createContent(panel, "", false);
+        final Disposable disposable = Disposer.newDisposable();
+        content.setDisposer(disposable);
+        toolWindow.getContentManager().addContent(content);
+
+        // several analyses might finish at once so only refresh once
+        final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+        project.getMessageBus().connect(disposable).subscribe(CppcheckMetrics.TOPIC, () -> {
+            if (refreshScheduled.compareAndSet(false, true)) {
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    refreshScheduled.set(false);
+                    refresh.run();
+                }, project.getDisposed());
+            }
+        });
+
+        refresh.run();
+    }
+
+    @NotNull
+    private static Object[] toRow(@NotNull final CppcheckMetrics.Summary summary) {
+        return new Object[]{
+                summary.file, summary.runs, summary.cacheHits, summary.executions, summary.wallP50, summary.wallP90,
+                summary.wallP99, summary.wallMax, summary.spawnP50, summary.parseP50, summary.outputBytesP50,
+                summary.lastFindings
+        };
+    }
+
+    private static void export(@NotNull final Project project, @NotNull final String extension) {
+        final FileSaverDescriptor descriptor = new FileSaverDescriptor("Export Cppcheck Metrics", "", extension);
+        final VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project)
+                .save((VirtualFile)null, "cppcheck-metrics." + extension);
+        if (wrapper == null) {
+            return;
+        }
+
+        final List<CppcheckMetrics.Summary> summaries = CppcheckMetrics.getInstance(project).getSummaries();
+        final String text = extension.equals("json") ? new GsonBuilder().setPrettyPrinting().create().toJson(summaries) : toCsv(summaries);
+        try {
+            FileUtil.writeToFile(wrapper.getFile(), text);
+        } catch (final IOException ex) {
+            CppcheckNotification.send("could not export metrics",
+                    ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                    NotificationType.WARNING);
+        }
+    }
+
+    @NotNull
+    private static String toCsv(@NotNull final List<CppcheckMetrics.Summary> summaries) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.join(",", COLUMNS)).append('\n');
+        for (final CppcheckMetrics.Summary summary : summaries) {
+            final Object[] row = toRow(summary);
+            for (int i = 0; i < row.length; ++i) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                final String value = String.valueOf(row[i]);
+                if (value.contains(",") || value.contains("\"")) {
+                    sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+                }
+                else {
+                    sb.append(value);
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,227 @@
+package com.github.johnthagen.cppcheck;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.execution.ExecutionException;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// the on-the-fly analysis with the MISRA addon is split into two stages: Cppcheck only creates the dump of the file
+// and reports its own findings right away - the addon is run on the dump afterwards with the lowest priority. The
+// findings of both stages are cached separately.
+class CppcheckMisraPipeline {
+    // the contents of the addon JSON file - see https://cppcheck.sourceforge.io/manual.pdf
+    private static class AddonJson {
+        String script;
+        List<String> args;
+    }
+
+    static class Addon {
+        Addon(@NotNull final File configFile, final long configStamp, @NotNull final File script, @NotNull final List<String> args) {
+            this.configFile = configFile;
+            this.configStamp = configStamp;
+            this.script = script;
+            this.args = args;
+        }
+
+        private final File configFile;
+        private final long configStamp;
+        final File script;
+        final List<String> args;
+    }
+
+    // the latest loaded addon configuration
+    private static Addon addon;
+
+    // limits the number of remembered failures
+    private static final int MAX_FAILURES = 100;
+
+    private final Project project;
+    // the cache keys of the files the addon is running for
+    private final Set<String> running = new HashSet<>();
+    // the latest run of the addon for each file - cancelled once the addon is scheduled for other contents
+    private final Map<VirtualFile, ProgressIndicator> indicators = new HashMap<>();
+    // the errors of the failed runs by cache key - they are not cached so the addon is run again after a restart but
+    // not over and over again for the same contents
+    private final LinkedHashMap<String, String> failures = new LinkedHashMap<>(16, 0.75f, true);
+
+    CppcheckMisraPipeline(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckMisraPipeline getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckMisraPipeline.class);
+    }
+
+    // returns null if the addon configuration is not supported - the addon is passed to Cppcheck then
+    @Nullable
+    static synchronized Addon loadAddon(@NotNull final File configFile, @NotNull final File cppcheckPath) {
+        if (addon != null && addon.configFile.equals(configFile) && addon.configStamp == configFile.lastModified()) {
+            return addon;
+        }
+
+        final long stamp = configFile.lastModified();
+        final AddonJson json;
+        try (final Reader reader = Files.newBufferedReader(configFile.toPath(), StandardCharsets.UTF_8)) {
+            json = new Gson().fromJson(reader, AddonJson.class);
+        } catch (final IOException | JsonParseException ex) {
+            return null;
+        }
+        if (json == null || json.script == null || !json.script.endsWith(".py")) {
+            return null;
+        }
+
+        // the same lookup as Cppcheck performs
+        final List<File> candidates = new ArrayList<>();
+        final File script = new File(json.script);
+        if (script.isAbsolute()) {
+            candidates.add(script);
+        }
+        else {
+            candidates.add(new File(configFile.getAbsoluteFile().getParentFile(), json.script));
+            final File cppcheckDir = cppcheckPath.getAbsoluteFile().getParentFile();
+            candidates.add(new File(new File(cppcheckDir, "addons"), json.script));
+            candidates.add(new File(cppcheckDir, json.script));
+        }
+        for (final File candidate : candidates) {
+            if (candidate.isFile()) {
+                addon = new Addon(configFile, stamp, candidate,
+                        json.args != null ? Collections.unmodifiableList(json.args) : Collections.emptyList());
+                return addon;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    static String getPython(@NotNull final CppcheckCommandLine commandLine) {
+        for (final String parameter : commandLine.getParameters()) {
+            if (parameter.startsWith("--addon-python=")) {
+                return parameter.substring("--addon-python=".length());
+            }
+        }
+        return SystemInfo.isWindows ? "python" : "python3";
+    }
+
+    // the key the addon findings are cached with
+    @NotNull
+    static String getCacheKey(@NotNull final String cacheKey) {
+        return "misra\n" + cacheKey;
+    }
+
+    synchronized boolean isRunning(@NotNull final String cacheKey) {
+        return running.contains(cacheKey);
+    }
+
+    // returns null if the addon did not fail for the given cache key
+    @Nullable
+    synchronized String getFailure(@NotNull final String cacheKey) {
+        return failures.get(cacheKey);
+    }
+
+    // the dump is moved out of the way right away so the next analysis of the file does not overwrite it - it is
+    // deleted once the addon is finished. A previous run of the addon for other contents of the file is cancelled.
+    void schedule(@NotNull final VirtualFile vFile,
+                  @NotNull final String cacheKey,
+                  @NotNull final File dumpFile,
+                  @NotNull final String analyzedPath,
+                  @NotNull final Addon addon,
+                  @NotNull final String python,
+                  @NotNull final CppCheckInspectionImpl inspectionImpl) throws IOException {
+        final File movedDumpFile = FileUtil.createTempFile(CppcheckScratchDirectory.getInstance(project).getDirectory(),
+                "misra_", ".dump", true, false);
+        Files.move(dumpFile.toPath(), movedDumpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        synchronized (this) {
+            if (!running.add(cacheKey)) {
+                FileUtil.delete(movedDumpFile);
+                return;
+            }
+            final ProgressIndicator previous = indicators.put(vFile, indicator);
+            if (previous != null) {
+                previous.cancel();
+            }
+        }
+
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            final List<CppcheckFinding> findings = new ArrayList<>();
+            final CppcheckMetrics.Execution execution = new CppcheckMetrics.Execution();
+            String failure = null;
+            try {
+                inspectionImpl.executeAddon(vFile, python, addon, movedDumpFile, analyzedPath, indicator,
+                        execution, findings::add);
+                CppcheckMetrics.getInstance(project).recordExecution(vFile.getPath() + " (MISRA)", execution, findings.size());
+            } catch (final ProcessCanceledException ex) {
+                // superseded by a run for newer contents
+                finish(vFile, cacheKey, indicator);
+                return;
+            } catch (final ExecutionException | CppcheckError | IOException ex) {
+                CppcheckNotification.send("MISRA addon failed for " + vFile.getCanonicalPath(),
+                        ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                        NotificationType.ERROR);
+                failure = "MISRA addon failed: " + ex.getClass().getSimpleName() + ": " + String.valueOf(ex.getMessage()).split("\n", 2)[0];
+            } finally {
+                FileUtil.delete(movedDumpFile);
+            }
+
+            if (failure == null) {
+                CppcheckResultCache.getInstance(project).put(getCacheKey(cacheKey), findings);
+            }
+            else {
+                synchronized (this) {
+                    failures.put(cacheKey, failure);
+                    if (failures.size() > MAX_FAILURES) {
+                        failures.remove(failures.keySet().iterator().next());
+                    }
+                }
+            }
+            finish(vFile, cacheKey, indicator);
+
+            // show the findings of the addon
+            ApplicationManager.getApplication().invokeLater(() -> {
+                if (project.isDisposed() || !vFile.isValid()) {
+                    return;
+                }
+                final PsiFile psiFile = PsiManager.getInstance(project).findFile(vFile);
+                if (psiFile != null) {
+                    DaemonCodeAnalyzer.getInstance(project).restart(psiFile);
+                }
+            });
+        });
+    }
+
+    private synchronized void finish(@NotNull final VirtualFile vFile, @NotNull final String cacheKey, @NotNull final ProgressIndicator indicator) {
+        running.remove(cacheKey);
+        indicators.remove(vFile, indicator);
+    }
+}
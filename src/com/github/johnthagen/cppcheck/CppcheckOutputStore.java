@@ -0,0 +1,136 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// keeps the compressed raw --xml output of the latest analysis of each file in memory
+class CppcheckOutputStore {
+    // limit for the compressed size of all stored outputs
+    private static final long MAX_BYTES = 16L * 1024 * 1024;
+
+    // each group of files analyzed by a separate invocation has its own output
+    private static final String BATCH_KEY_PREFIX = "<Inspect Code #";
+
+    // the output is compressed while it is written
+    static class Output extends OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final GZIPOutputStream gzip;
+
+        Output() throws IOException {
+            gzip = new GZIPOutputStream(bytes);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            gzip.write(b);
+        }
+
+        @Override
+        public void write(@NotNull final byte[] b, final int off, final int len) throws IOException {
+            gzip.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            gzip.close();
+        }
+    }
+
+    private final LinkedHashMap<String, byte[]> outputs = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private String latestKey = null;
+    // the groups of the latest batch analysis in the order they were analyzed
+    private final List<String> batchKeys = new ArrayList<>();
+
+    @NotNull
+    static CppcheckOutputStore getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckOutputStore.class);
+    }
+
+    @NotNull
+    static String getBatchKey(final int group) {
+        return BATCH_KEY_PREFIX + group + ">";
+    }
+
+    static boolean isBatchKey(@NotNull final String key) {
+        return key.startsWith(BATCH_KEY_PREFIX);
+    }
+
+    // drops the outputs of the previous batch analysis since it might have consisted of more groups
+    synchronized void startBatch() {
+        for (final String key : batchKeys) {
+            final byte[] previous = outputs.remove(key);
+            if (previous != null) {
+                totalBytes -= previous.length;
+            }
+        }
+        batchKeys.clear();
+    }
+
+    // the output has to be closed
+    synchronized void put(@NotNull final String key, @NotNull final Output output) {
+        final byte[] compressed = output.bytes.toByteArray();
+        final byte[] previous = outputs.put(key, compressed);
+        if (previous != null) {
+            totalBytes -= previous.length;
+        }
+        totalBytes += compressed.length;
+        latestKey = key;
+        if (isBatchKey(key) && !batchKeys.contains(key)) {
+            batchKeys.add(key);
+        }
+
+        final Iterator<Map.Entry<String, byte[]>> it = outputs.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && it.hasNext()) {
+            final Map.Entry<String, byte[]> eldest = it.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            totalBytes -= eldest.getValue().length;
+            batchKeys.remove(eldest.getKey());
+            it.remove();
+        }
+    }
+
+    @Nullable
+    String get(@NotNull final String key) throws IOException {
+        final byte[] compressed;
+        synchronized (this) {
+            compressed = outputs.get(key);
+        }
+        if (compressed == null) {
+            return null;
+        }
+        try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(FileUtil.loadBytes(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Nullable
+    synchronized String getLatestKey() {
+        return latestKey;
+    }
+
+    // the keys of the groups of the latest batch analysis which are still stored
+    @NotNull
+    synchronized List<String> getBatchKeys() {
+        return new ArrayList<>(batchKeys);
+    }
+}
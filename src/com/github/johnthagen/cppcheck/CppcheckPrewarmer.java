@@ -0,0 +1,188 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.ide.IdeEventQueue;
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// analyzes the files changed on disk (e.g. by a checkout) ahead of time so their results are cached once they are
+// looked at - only the files of the open editors which are not visible are taken into account. A single file is analyzed at a time and only while the user is idle, the IDE is not indexing, power save
+// mode is off and no other Cppcheck process is running or waiting.
+class CppcheckPrewarmer implements Disposable {
+    // how long the user has to be inactive before a file is analyzed
+    private static final long IDLE_MS = 10 * 1000;
+    private static final long POLL_MS = 2000;
+    private static final int MAX_PENDING = 100;
+
+    // the VFS changes are received as a project listener so the service only needs to exist once it is enabled
+    static class Listener implements BulkFileListener {
+        private final Project project;
+
+        Listener(@NotNull final Project project) {
+            this.project = project;
+        }
+
+        @Override
+        public void after(@NotNull final List<? extends VFileEvent> events) {
+            if (isEnabled() && !project.isDisposed()) {
+                getInstance(project).filesChanged(events);
+            }
+        }
+    }
+
+    private final Project project;
+    // in the order the files were changed
+    private final Set<VirtualFile> pending = new LinkedHashSet<>();
+    private boolean scheduled = false;
+    private boolean disposed = false;
+
+    CppcheckPrewarmer(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckPrewarmer getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckPrewarmer.class);
+    }
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_PREWARM));
+    }
+
+    private void filesChanged(@NotNull final List<? extends VFileEvent> events) {
+        final FileEditorManager editorManager = FileEditorManager.getInstance(project);
+        final Set<VirtualFile> candidates = new HashSet<>(Arrays.asList(editorManager.getOpenFiles()));
+        // the visible editors are highlighted again right away
+        candidates.removeAll(Arrays.asList(editorManager.getSelectedFiles()));
+
+        synchronized (this) {
+            for (final VFileEvent event : events) {
+                final VirtualFile vFile = event.getFile();
+                if (!(event instanceof VFileContentChangeEvent) || vFile == null || !candidates.contains(vFile) ||
+                        !SupportedExtensions.isCFamilyFile(vFile)) {
+                    continue;
+                }
+                // a changed file is analyzed after the ones changed before it
+                pending.remove(vFile);
+                if (pending.size() < MAX_PENDING) {
+                    pending.add(vFile);
+                }
+            }
+            if (!pending.isEmpty() && !scheduled && !disposed) {
+                scheduled = true;
+                schedule();
+            }
+        }
+    }
+
+    private void schedule() {
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(this::processNext, POLL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // analyzes the next pending file if the IDE is idle - otherwise checks again later
+    private void processNext() {
+        final VirtualFile vFile;
+        synchronized (this) {
+            if (disposed || pending.isEmpty()) {
+                scheduled = false;
+                return;
+            }
+            if (isBusy()) {
+                schedule();
+                return;
+            }
+            final Iterator<VirtualFile> iterator = pending.iterator();
+            vFile = iterator.next();
+            iterator.remove();
+        }
+
+        try {
+            analyze(vFile);
+        } catch (final ProcessCanceledException ignored) {
+            // the document was changed or the project was closed
+        } finally {
+            synchronized (this) {
+                if (disposed || pending.isEmpty()) {
+                    scheduled = false;
+                }
+                else {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    private boolean isBusy() {
+        final CppcheckProcessLimiter limiter = CppcheckProcessLimiter.getInstance();
+        return PowerSaveMode.isEnabled() ||
+                DumbService.isDumb(project) ||
+                IdeEventQueue.getInstance().getIdleTime() < IDLE_MS ||
+                limiter.getRunningProcesses() > 0 ||
+                limiter.getQueueDepth() > 0;
+    }
+
+    private void analyze(@NotNull final VirtualFile vFile) {
+        if (project.isDisposed() || !vFile.isValid() || !isEnabled()) {
+            return;
+        }
+        final FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        // the unsaved changes of a modified file are analyzed on the fly anyways
+        if (documentManager.isFileModified(vFile)) {
+            return;
+        }
+        // the text of the document is analyzed - just like on the fly so the same result is cached
+        final Document document = ApplicationManager.getApplication().runReadAction((Computable<Document>) () -> documentManager.getDocument(vFile));
+        if (document == null) {
+            return;
+        }
+        final long[] modificationStamp = new long[1];
+        final String text = ApplicationManager.getApplication().runReadAction((Computable<String>) () -> {
+            modificationStamp[0] = document.getModificationStamp();
+            return document.getText();
+        });
+        if (CppcheckRunner.getCachedResult(project, vFile, text) != null) {
+            return;
+        }
+        // editing the document or closing the project aborts the analysis
+        final Disposable disposable = Disposer.newDisposable();
+        try {
+            final ProgressIndicator indicator = CppcheckScheduler.createIndicator(project, document, modificationStamp[0], disposable);
+            ProgressManager.getInstance().runProcess(() -> CppcheckRunner.prewarm(project, vFile, text, document), indicator);
+        } finally {
+            Disposer.dispose(disposable);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            disposed = true;
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+// limits the number of concurrently running Cppcheck processes across all projects - a batch analysis using -j <n>
+// occupies <n> slots
+class CppcheckProcessLimiter {
+    private static final int POLL_MS = 50;
+
+    interface Listener {
+        void stateChanged();
+    }
+
+    static final Topic<Listener> TOPIC = Topic.create("Cppcheck processes", Listener.class);
+
+    // in the order they are served
+    enum Priority {
+        // the file in the focused editor
+        FOCUSED,
+        ON_THE_FLY,
+        BATCH,
+        // the separate addon stage of the on-the-fly analysis
+        ADDON,
+        // files analyzed ahead of time while the IDE is idle
+        PREWARM
+    }
+
+    private static class Ticket {
+        Ticket(@NotNull final Priority priority, final long sequence, final int slots) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.slots = slots;
+        }
+
+        final Priority priority;
+        final long sequence;
+        final int slots;
+    }
+
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>(
+            Comparator.<Ticket, Priority>comparing(t -> t.priority).thenComparingLong(t -> t.sequence));
+    private long sequence = 0;
+    private int usedSlots = 0;
+    private int runningProcesses = 0;
+
+    @NotNull
+    static CppcheckProcessLimiter getInstance() {
+        return ServiceManager.getService(CppcheckProcessLimiter.class);
+    }
+
+    static int getDefaultMaxProcesses() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    static int getMaxProcesses() {
+        final String maxProcesses = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_MAX_PROCESSES);
+        if (maxProcesses != null && !maxProcesses.isEmpty()) {
+            try {
+                return Math.max(1, Integer.parseInt(maxProcesses));
+            } catch (final NumberFormatException ignored) {
+                // fall back to the default
+            }
+        }
+        return getDefaultMaxProcesses();
+    }
+
+    // blocks until the requested number of slots is available - returns the number of acquired slots which might be
+    // less than requested if the limit is lower
+    int acquire(@NotNull final Priority priority, final int slots, @NotNull final ProgressIndicator indicator) {
+        final Ticket ticket;
+        synchronized (this) {
+            ticket = new Ticket(priority, sequence++, Math.max(1, slots));
+            queue.add(ticket);
+        }
+        fireStateChanged();
+
+        int acquired = 0;
+        try {
+            synchronized (this) {
+                while (true) {
+                    if (indicator.isCanceled()) {
+                        throw new ProcessCanceledException();
+                    }
+                    // the limit might be changed while waiting
+                    final int maxProcesses = getMaxProcesses();
+                    final int requested = Math.min(ticket.slots, maxProcesses);
+                    if (queue.peek() == ticket && usedSlots + requested <= maxProcesses) {
+                        queue.remove();
+                        usedSlots += requested;
+                        ++runningProcesses;
+                        acquired = requested;
+                        break;
+                    }
+                    wait(POLL_MS);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(e);
+        } finally {
+            if (acquired == 0) {
+                synchronized (this) {
+                    queue.remove(ticket);
+                    notifyAll();
+                }
+            }
+            fireStateChanged();
+        }
+        return acquired;
+    }
+
+    void release(final int slots) {
+        synchronized (this) {
+            usedSlots -= slots;
+            --runningProcesses;
+            notifyAll();
+        }
+        fireStateChanged();
+    }
+
+    synchronized int getRunningProcesses() {
+        return runningProcesses;
+    }
+
+    synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    private static void fireStateChanged() {
+        ApplicationManager.getApplication().getMessageBus().syncPublisher(TOPIC).stateChanged();
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.openapi.project.Project;
+import com.intellij.ui.components.panels.VerticalLayout;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.util.ArrayList;
+import java.util.List;
+
+// the options stored within the project - they take precedence over the ones from the Cppcheck Configuration
+class CppcheckProjectConfiguration implements Configurable {
+    private static final String PROFILES_NOTE =
+            "One directory per line followed by the options which are appended for the files within it, e.g. " +
+                    "third_party=--max-configs=1 --check-level=normal. Directories are relative to the project " +
+                    "directory. Nested directories get the options of all their parents.";
+
+    private final Project project;
+    private boolean modified = false;
+    private JTextField optionsField;
+    private JTextArea profilesArea;
+
+    private final DocumentListener listener = new DocumentListener() {
+        @Override
+        public void insertUpdate(final DocumentEvent documentEvent) {
+            modified = true;
+        }
+
+        @Override
+        public void removeUpdate(final DocumentEvent documentEvent) {
+            modified = true;
+        }
+
+        @Override
+        public void changedUpdate(final DocumentEvent documentEvent) {
+            modified = true;
+        }
+    };
+
+    CppcheckProjectConfiguration(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @Nls
+    @Override
+    public String getDisplayName() {
+        return "Cppcheck Project";
+    }
+
+    @Nullable
+    @Override
+    public String getHelpTopic() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public JComponent createComponent() {
+        final JLabel optionsLabel = new JLabel("Cppcheck Options (replace the ones from 'Cppcheck Configuration' if not empty):");
+        optionsField = new JTextField(38);
+        final JLabel profilesLabel = new JLabel("Directory Options:");
+        profilesArea = new JTextArea(6, 80);
+
+        final JTextArea profilesNoteArea = new JTextArea(PROFILES_NOTE, 2, 80);
+        profilesNoteArea.setLineWrap(true);
+        profilesNoteArea.setWrapStyleWord(true);
+
+        reset();
+
+        optionsField.getDocument().addDocumentListener(listener);
+        profilesArea.getDocument().addDocumentListener(listener);
+
+        final JPanel jPanel = new JPanel();
+        jPanel.setLayout(new VerticalLayout(1, 2));
+        jPanel.add(optionsLabel);
+        jPanel.add(optionsField);
+        jPanel.add(profilesLabel);
+        jPanel.add(new JScrollPane(profilesArea));
+        jPanel.add(profilesNoteArea);
+        return jPanel;
+    }
+
+    @Override
+    public boolean isModified() {
+        return modified;
+    }
+
+    @Override
+    public void apply() {
+        final CppcheckProjectSettings.Options options = new CppcheckProjectSettings.Options();
+        options.options = optionsField.getText().trim();
+        options.profiles = parseProfiles(profilesArea.getText());
+        CppcheckProjectSettings.getInstance(project).loadState(options);
+        modified = false;
+    }
+
+    @Override
+    public void reset() {
+        final CppcheckProjectSettings.Options options = CppcheckProjectSettings.getInstance(project).getState();
+        optionsField.setText(options.options);
+
+        final StringBuilder sb = new StringBuilder();
+        for (final CppcheckProjectSettings.Profile profile : options.profiles) {
+            sb.append(profile.directory).append('=').append(profile.options).append('\n');
+        }
+        profilesArea.setText(sb.toString());
+
+        modified = false;
+    }
+
+    @Override
+    public void disposeUIResources() {
+        optionsField.getDocument().removeDocumentListener(listener);
+        profilesArea.getDocument().removeDocumentListener(listener);
+    }
+
+    // the directory is separated from the options by the first =
+    @NotNull
+    private static List<CppcheckProjectSettings.Profile> parseProfiles(@NotNull final String text) {
+        final List<CppcheckProjectSettings.Profile> profiles = new ArrayList<>();
+        for (final String line : text.split("\\r?\\n")) {
+            final int separator = line.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            final String directory = line.substring(0, separator).trim();
+            if (!directory.isEmpty()) {
+                profiles.add(new CppcheckProjectSettings.Profile(directory, line.substring(separator + 1).trim()));
+            }
+        }
+        return profiles;
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.execution.ParametersListUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// the options of the project and its directories - they are resolved into command line templates once which are
+// dropped when the options change
+@State(name = "Cppcheck", storages = @Storage("cppcheck.xml"))
+class CppcheckProjectSettings implements PersistentStateComponent<CppcheckProjectSettings.Options> {
+    public static class Options {
+        // replaces the global options if not empty
+        public String options = "";
+        public List<Profile> profiles = new ArrayList<>();
+    }
+
+    // options appended for the files within the directory - nested profiles are applied from the outermost one
+    public static class Profile {
+        public Profile() {
+        }
+
+        Profile(@NotNull final String directory, @NotNull final String options) {
+            this.directory = directory;
+            this.options = options;
+        }
+
+        // relative to the project directory or absolute
+        public String directory = "";
+        public String options = "";
+    }
+
+    private static class ResolvedProfile {
+        ResolvedProfile(@NotNull final String directory, @NotNull final List<String> options) {
+            this.directory = directory;
+            this.options = options;
+        }
+
+        final String directory;
+        final List<String> options;
+    }
+
+    private static class Templates {
+        Templates(@Nullable final String globalOptions, final boolean inlineSuppressions, @NotNull final List<ResolvedProfile> profiles) {
+            this.globalOptions = globalOptions;
+            this.inlineSuppressions = inlineSuppressions;
+            this.profiles = profiles;
+        }
+
+        // the values of the global configuration the templates were created with
+        final String globalOptions;
+        final boolean inlineSuppressions;
+        // ordered from the outermost directory
+        final List<ResolvedProfile> profiles;
+        // by the matching profiles and the MISRA addon
+        final Map<String, CppcheckCommandLine> commandLines = new ConcurrentHashMap<>();
+    }
+
+    private final Project project;
+    private Options state = new Options();
+    private volatile Templates templates;
+
+    CppcheckProjectSettings(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckProjectSettings getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckProjectSettings.class);
+    }
+
+    @NotNull
+    @Override
+    public synchronized Options getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized void loadState(@NotNull final Options state) {
+        this.state = state;
+        templates = null;
+    }
+
+    // the MISRA addon is only passed if the configured file exists
+    @NotNull
+    CppcheckCommandLine getCommandLine(@NotNull final VirtualFile vFile, @Nullable final File cppcheckMisraPathFile) {
+        final Templates current = getTemplates();
+
+        final List<ResolvedProfile> matching = new ArrayList<>();
+        final StringBuilder key = new StringBuilder();
+        for (final ResolvedProfile profile : current.profiles) {
+            if (FileUtil.isAncestor(profile.directory, vFile.getPath(), false)) {
+                matching.add(profile);
+                key.append(profile.directory).append('\n');
+            }
+        }
+        if (cppcheckMisraPathFile != null) {
+            key.append(cppcheckMisraPathFile.getPath());
+        }
+
+        return current.commandLines.computeIfAbsent(key.toString(), k -> {
+            final String globalOptions = current.globalOptions;
+            final String projectOptions = getState().options;
+            final List<String> parameters = new ArrayList<>(ParametersListUtil.parse(
+                    projectOptions != null && !projectOptions.trim().isEmpty() ? projectOptions :
+                            globalOptions != null ? globalOptions : ""));
+            for (final ResolvedProfile profile : matching) {
+                parameters.addAll(profile.options);
+            }
+            if (cppcheckMisraPathFile != null) {
+                parameters.add("--addon=" + cppcheckMisraPathFile.getPath());
+            }
+            // Cppcheck applies the inline suppressions itself so they never show up in the output
+            if (current.inlineSuppressions && !parameters.contains("--inline-suppr")) {
+                parameters.add("--inline-suppr");
+            }
+            parameters.add("--xml");
+            return new CppcheckCommandLine(parameters);
+        });
+    }
+
+    @NotNull
+    private synchronized Templates getTemplates() {
+        // the global configuration might be written by anyone so the values are compared
+        final String globalOptions = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_OPTIONS);
+        final boolean inlineSuppressions = CppcheckSuppressions.isInlineEnabled();
+        if (templates != null && Objects.equals(templates.globalOptions, globalOptions) && templates.inlineSuppressions == inlineSuppressions) {
+            return templates;
+        }
+
+        final String basePath = project.getBasePath();
+        final List<ResolvedProfile> profiles = new ArrayList<>();
+        for (final Profile profile : state.profiles) {
+            if (profile.directory == null || profile.directory.trim().isEmpty() || profile.options == null) {
+                continue;
+            }
+            final String directory = profile.directory.trim();
+            final File dir = new File(directory).isAbsolute() || basePath == null ? new File(directory) : new File(basePath, directory);
+            profiles.add(new ResolvedProfile(CppcheckRunner.normalizePath(dir.getPath()), ParametersListUtil.parse(profile.options)));
+        }
+        profiles.sort(Comparator.comparingInt(p -> p.directory.length()));
+        templates = new Templates(globalOptions, inlineSuppressions, profiles);
+        return templates;
+    }
+}
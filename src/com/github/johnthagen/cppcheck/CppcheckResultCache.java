@@ -0,0 +1,223 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// caches the parsed findings of an analysis by the hash of everything which affects its result
+// the cache is stored on disk shortly after it changed and when the project is closed so unchanged files do not need to
+// be analyzed again - also after a crash
+class CppcheckResultCache implements Disposable {
+    private static final int MAX_ENTRIES = 2048;
+    private static final int MAX_FINDINGS = 100 * 1000;
+    // the changes within this period are stored together
+    private static final long SAVE_DELAY_MS = 30 * 1000;
+
+    private final Path storagePath;
+    // access-ordered so the iteration starts with the least recently used entry
+    private final LinkedHashMap<String, List<CppcheckFinding>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int findingsCount = 0;
+    private boolean modified = false;
+    // the stored cache is loaded in the background - it must not be overwritten before it was loaded
+    private boolean loaded = false;
+    private ScheduledFuture<?> scheduledSave;
+    private boolean disposed = false;
+    // serializes the writes of the file
+    private final Object saveLock = new Object();
+
+    CppcheckResultCache(@NotNull final Project project) {
+        storagePath = Paths.get(PathManager.getSystemPath(), "cppcheck", project.getLocationHash() + ".bin");
+        ApplicationManager.getApplication().executeOnPooledThread(this::load);
+    }
+
+    @NotNull
+    static CppcheckResultCache getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckResultCache.class);
+    }
+
+    @NotNull
+    static String computeKey(@NotNull final String text,
+                             @NotNull final String fileName,
+                             @NotNull final String options,
+                             @NotNull final String suppressions,
+                             @NotNull final String dependencies,
+                             @NotNull final File cppcheckPath,
+                             @Nullable final File cppcheckMisraPath) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // the file name affects the language detection - the path, size and timestamp identify the Cppcheck binary
+        update(digest, fileName);
+        update(digest, options);
+        // the findings are stored after the suppressions were applied
+        update(digest, suppressions);
+        // the state of the included files
+        update(digest, dependencies);
+        update(digest, cppcheckPath.getAbsolutePath());
+        update(digest, Long.toString(cppcheckPath.length()));
+        update(digest, Long.toString(cppcheckPath.lastModified()));
+        // the addon configuration is referenced by the options but its contents might change
+        if (cppcheckMisraPath != null) {
+            update(digest, Long.toString(cppcheckMisraPath.length()));
+            update(digest, Long.toString(cppcheckMisraPath.lastModified()));
+        }
+        update(digest, text);
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    private static void update(@NotNull final MessageDigest digest, @NotNull final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+    }
+
+    @Nullable
+    synchronized List<CppcheckFinding> get(@NotNull final String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(@NotNull final String key, @NotNull final List<CppcheckFinding> findings) {
+        final List<CppcheckFinding> previous = entries.put(key, findings);
+        if (previous != null) {
+            findingsCount -= previous.size();
+        }
+        findingsCount += findings.size();
+        modified = true;
+        scheduleSave();
+
+        final Iterator<Map.Entry<String, List<CppcheckFinding>>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > MAX_ENTRIES || findingsCount > MAX_FINDINGS) && iterator.hasNext()) {
+            final Map.Entry<String, List<CppcheckFinding>> eldest = iterator.next();
+            // never evict what was just added
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            findingsCount -= eldest.getValue().size();
+            iterator.remove();
+        }
+    }
+
+    private void load() {
+        Map<String, List<CppcheckFinding>> stored;
+        try {
+            stored = CppcheckCacheStorage.load(storagePath);
+        } catch (final IOException | RuntimeException ex) {
+            // a corrupt cache is simply discarded
+            stored = null;
+        }
+        if (stored == null) {
+            discard();
+        }
+
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+            // the stored entries are older than the ones added in the meantime
+            final boolean changed = modified;
+            final Map<String, List<CppcheckFinding>> added = new LinkedHashMap<>(entries);
+            entries.clear();
+            findingsCount = 0;
+            if (stored != null) {
+                for (final Map.Entry<String, List<CppcheckFinding>> entry : stored.entrySet()) {
+                    put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (final Map.Entry<String, List<CppcheckFinding>> entry : added.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            modified = changed;
+            loaded = true;
+            cancelSave();
+            if (modified) {
+                scheduleSave();
+            }
+        }
+    }
+
+    private synchronized void scheduleSave() {
+        if (!loaded || disposed || scheduledSave != null) {
+            return;
+        }
+        scheduledSave = AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            synchronized (this) {
+                scheduledSave = null;
+            }
+            save();
+        }, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelSave() {
+        if (scheduledSave != null) {
+            scheduledSave.cancel(false);
+            scheduledSave = null;
+        }
+    }
+
+    // the entries are copied so the analyses are not blocked while the file is written
+    private void save() {
+        synchronized (saveLock) {
+            final Map<String, List<CppcheckFinding>> snapshot;
+            synchronized (this) {
+                if (!modified || !loaded) {
+                    return;
+                }
+                snapshot = new LinkedHashMap<>(entries);
+                modified = false;
+            }
+            try {
+                CppcheckCacheStorage.save(storagePath, snapshot);
+            } catch (final IOException ex) {
+                synchronized (this) {
+                    modified = true;
+                }
+                CppcheckNotification.send("could not store analysis cache",
+                        ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                        NotificationType.WARNING);
+            }
+        }
+    }
+
+    private void discard() {
+        try {
+            Files.deleteIfExists(storagePath);
+        } catch (final IOException ignored) {
+            // it will be overwritten when the cache is stored
+        }
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            cancelSave();
+        }
+        save();
+        synchronized (this) {
+            disposed = true;
+        }
+    }
+}
@@ -0,0 +1,721 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// runs the analysis of a file - shared by the inspection and the annotator
+class CppcheckRunner {
+    static class Result {
+        Result(@NotNull final List<CppcheckFinding> findings, @NotNull final List<String> errors) {
+            this(findings, errors, false);
+        }
+
+        Result(@NotNull final List<CppcheckFinding> findings, @NotNull final List<String> errors, final boolean incomplete) {
+            this.findings = findings;
+            this.errors = errors;
+            this.incomplete = incomplete;
+        }
+
+        final List<CppcheckFinding> findings;
+        // problems with the configuration or the execution which are not tied to a location
+        final List<String> errors;
+        // the findings of the MISRA addon are still missing
+        final boolean incomplete;
+    }
+
+    // the configuration which applies to all analyzed files
+    private static class Settings {
+        File cppcheckPathFile;
+        File cppcheckMisraPathFile;
+        String cppcheckMisraPath;
+        int verboseLevel;
+        CppcheckSuppressions.Matcher suppressions;
+        // problems with the configuration which still allow the analysis to be performed
+        final List<String> errors = new ArrayList<>();
+    }
+
+    // returns a result if the configuration does not allow an analysis
+    @Nullable
+    private static Result loadSettings(@NotNull final Project project, @NotNull final Settings settings) {
+        final String cppcheckPath = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_PATH);
+        if (cppcheckPath == null || cppcheckPath.isEmpty()) {
+            return error("Please set 'Cppcheck Path' in 'Cppcheck Configuration'.");
+        }
+
+        final File cppcheckPathFile = new File(cppcheckPath);
+        if (!cppcheckPathFile.exists()) {
+            return error("Configured 'Cppcheck Path' in 'Cppcheck Configuration' does not exist: " + cppcheckPathFile.getAbsolutePath());
+        }
+        settings.cppcheckPathFile = cppcheckPathFile;
+
+        final String cppcheckMisraPath = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_MISRA_PATH);
+        settings.cppcheckMisraPath = cppcheckMisraPath;
+        if (cppcheckMisraPath != null && !cppcheckMisraPath.isEmpty()) {
+            final File cppcheckMisraPathFile = new File(cppcheckMisraPath);
+            if (!cppcheckMisraPathFile.exists()) {
+                settings.errors.add("Configured 'MISRA Addon JSON' in 'Cppcheck Configuration' does not exist: " + cppcheckMisraPathFile.getAbsolutePath());
+            }
+            else {
+                settings.cppcheckMisraPathFile = cppcheckMisraPathFile;
+            }
+        }
+
+        settings.suppressions = CppcheckSuppressions.getInstance(project).getMatcher();
+        settings.errors.addAll(settings.suppressions.errors);
+
+        int verboseLevel = 0;
+        final String cppcheckVerboseLevel = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_VERBOSE_LEVEL);
+        if (cppcheckVerboseLevel != null && !cppcheckVerboseLevel.isEmpty()) {
+            verboseLevel = Integer.parseInt(cppcheckVerboseLevel);
+        }
+        settings.verboseLevel = verboseLevel;
+
+        return null;
+    }
+
+    // does not require a read action - the document is only provided for on-the-fly analysis so changing it will
+    // abort the analysis
+    @NotNull
+    static Result analyze(@NotNull final Project project,
+                          @NotNull final VirtualFile vFile,
+                          @NotNull final String documentText,
+                          @Nullable final Document changedDocument) {
+        return analyze(project, vFile, documentText, changedDocument, null);
+    }
+
+    // the findings are additionally passed to the progress consumer while Cppcheck is still running - this only
+    // happens if the analysis is actually performed by this call
+    @NotNull
+    static Result analyze(@NotNull final Project project,
+                          @NotNull final VirtualFile vFile,
+                          @NotNull final String documentText,
+                          @Nullable final Document changedDocument,
+                          @Nullable final Consumer<CppcheckFinding> progress) {
+        final Result result = analyze(project, vFile, documentText, changedDocument, progress, null, false);
+        // only null if just the cache is queried
+        if (result == null) {
+            throw new IllegalStateException("no result for " + vFile.getPath());
+        }
+        return result;
+    }
+
+    // analyzes the file ahead of time with the lowest priority so the result is cached once it is opened - editing the
+    // document aborts the analysis
+    static void prewarm(@NotNull final Project project,
+                        @NotNull final VirtualFile vFile,
+                        @NotNull final String documentText,
+                        @NotNull final Document document) {
+        analyze(project, vFile, documentText, document, null, CppcheckProcessLimiter.Priority.PREWARM, false);
+    }
+
+    // returns null if the findings are not cached - configuration errors are still returned. This is only a lookup so
+    // it is not recorded as cache hit.
+    @Nullable
+    static Result getCachedResult(@NotNull final Project project,
+                                  @NotNull final VirtualFile vFile,
+                                  @NotNull final String documentText) {
+        return analyze(project, vFile, documentText, null, null, null, true);
+    }
+
+    @Nullable
+    private static Result analyze(@NotNull final Project project,
+                                  @NotNull final VirtualFile vFile,
+                                  @NotNull final String documentText,
+                                  @Nullable final Document changedDocument,
+                                  @Nullable final Consumer<CppcheckFinding> progress,
+                                  @Nullable final CppcheckProcessLimiter.Priority priority,
+                                  final boolean cachedOnly) {
+        final Settings settings = new Settings();
+        final Result settingsError = loadSettings(project, settings);
+        if (settingsError != null) {
+            return settingsError;
+        }
+
+        final File cppcheckPathFile = settings.cppcheckPathFile;
+        final String cppcheckMisraPath = settings.cppcheckMisraPath;
+        final List<String> errors = new ArrayList<>(settings.errors);
+
+        // the findings imported for the same contents are used instead of a local analysis
+        final List<CppcheckFinding> importedFindings = CppcheckImportedResults.getInstance(project).get(vFile, documentText,
+                settings.suppressions.fingerprint, getOptionsKey(project, vFile, settings));
+        if (importedFindings != null) {
+            if (!cachedOnly) {
+                CppcheckMetrics.getInstance(project).recordCacheHit(vFile.getPath(), importedFindings.size());
+            }
+            return new Result(importedFindings, errors);
+        }
+
+        // Cppcheck only sees the contents on disk when analyzing the including source file
+        if (SupportedExtensions.isIncludedFile(vFile) && !FileDocumentManager.getInstance().isFileModified(vFile)) {
+            final VirtualFile source = CppcheckTranslationUnits.getInstance(project).findIncludingSource(vFile);
+            if (source != null) {
+                return analyzeHeader(project, vFile, source, settings, errors, changedDocument, progress, priority, cachedOnly);
+            }
+        }
+
+        // the on-the-fly analysis runs the MISRA addon as a separate stage on the dump of the file
+        final CppcheckMisraPipeline.Addon misraAddon = (changedDocument != null || cachedOnly) && settings.cppcheckMisraPathFile != null ?
+                CppcheckMisraPipeline.loadAddon(settings.cppcheckMisraPathFile, cppcheckPathFile) : null;
+        final CppcheckCommandLine fullCommandLine = misraAddon != null ?
+                getCommandLine(project, vFile, null).append(Collections.singletonList("--dump")) :
+                getCommandLine(project, vFile, settings.cppcheckMisraPathFile);
+        // files which timed out before are analyzed with reduced options right away
+        final CppcheckCostModel costModel = CppcheckCostModel.getInstance(project);
+        final long size = CppcheckCostModel.getSize(vFile, documentText);
+        final CppcheckCommandLine reducedCommandLine = costModel.isReduced(vFile.getPath(), size, fullCommandLine.getKey()) ?
+                CppcheckCostModel.reduce(fullCommandLine) : null;
+        final CppcheckCommandLine commandLine = reducedCommandLine != null ? reducedCommandLine : fullCommandLine;
+
+        final CppCheckInspectionImpl inspectionImpl = new CppCheckInspectionImpl(settings.verboseLevel, settings.suppressions);
+
+        final CppcheckResultCache cache = CppcheckResultCache.getInstance(project);
+        // the included files are part of the key so the file is analyzed again when one of them changes
+        final String dependencies = CppcheckIncludeGraph.getInstance(project).getFingerprint(vFile, documentText,
+                CppcheckIncludeGraph.getIncludeDirectories(commandLine));
+        final String cacheKey = CppcheckResultCache.computeKey(documentText, vFile.getName(), commandLine.getKey(), settings.suppressions.fingerprint,
+                dependencies, cppcheckPathFile, settings.cppcheckMisraPathFile);
+        final List<CppcheckFinding> cachedFindings = cache.get(cacheKey);
+        final CppcheckMetrics metrics = CppcheckMetrics.getInstance(project);
+        if (cachedFindings != null) {
+            final Result result = misraAddon != null ? withMisraFindings(project, cacheKey, cachedFindings, errors) :
+                    new Result(cachedFindings, errors);
+            // without the findings of the addon and without a running addon the dump has to be created again
+            if (result != null) {
+                if (!cachedOnly) {
+                    metrics.recordCacheHit(vFile.getPath(), result.findings.size());
+                }
+                return result;
+            }
+        }
+        if (cachedOnly) {
+            return null;
+        }
+
+        try {
+            final List<CppcheckFinding> findings = CppcheckScheduler.getInstance(project).run(vFile, cacheKey, changedDocument, documentText, indicator -> {
+                // unmodified files are analyzed in place - only the contents of modified documents need to be copied.
+                // The document might have been changed or saved since the text was taken so the file has to match it.
+                // The dump for the MISRA addon is written next to the analyzed file so a copy is analyzed then.
+                File tempFile = null;
+                try {
+                    final File analyzedFile;
+                    if (misraAddon != null || !isOnDisk(vFile, documentText)) {
+                        tempFile = FileUtil.createTempFile(CppcheckScratchDirectory.getInstance(project).getDirectory(),
+                                RandomStringUtils.randomAlphanumeric(8) + "_", vFile.getName(), true, false);
+                        FileUtil.writeToFile(tempFile, documentText);
+                        analyzedFile = tempFile;
+                    }
+                    else {
+                        analyzedFile = new File(vFile.getPath());
+                    }
+
+                    final List<CppcheckFinding> parsedFindings = new ArrayList<>();
+                    final CppcheckMetrics.Execution execution = new CppcheckMetrics.Execution();
+                    // keep the output for "Show Cppcheck XML Output" - also if the execution failed but not if it was cancelled
+                    final CppcheckOutputStore.Output rawOutput = new CppcheckOutputStore.Output();
+                    final File dumpFile = new File(analyzedFile.getPath() + ".dump");
+                    Throwable failure = null;
+                    try {
+                        inspectionImpl.executeCommandOnFile(vFile, cppcheckPathFile, commandLine,
+                                analyzedFile, misraAddon != null ? null : cppcheckMisraPath, costModel.getTimeoutMillis(vFile.getPath(), size),
+                                priority != null ? priority : getPriority(project, vFile, changedDocument), indicator, rawOutput, execution, finding -> {
+                                    parsedFindings.add(finding);
+                                    if (progress != null) {
+                                        progress.accept(finding);
+                                    }
+                                });
+                        metrics.recordExecution(vFile.getPath(), execution, parsedFindings.size());
+                        if (reducedCommandLine == null) {
+                            costModel.record(vFile.getPath(), size, execution.wallNanos);
+                        }
+
+                        // the addon has to be running before the findings are cached - see withMisraFindings()
+                        if (misraAddon != null && dumpFile.isFile()) {
+                            CppcheckMisraPipeline.getInstance(project).schedule(vFile, cacheKey, dumpFile,
+                                    analyzedFile.getAbsolutePath(), misraAddon, CppcheckMisraPipeline.getPython(commandLine), inspectionImpl);
+                        }
+                    } catch (final Throwable t) {
+                        failure = t;
+                        throw t;
+                    } finally {
+                        rawOutput.close();
+                        if (isOutputComplete(failure)) {
+                            CppcheckOutputStore.getInstance(project).put(vFile.getPath(), rawOutput);
+                        }
+                        if (misraAddon != null) {
+                            FileUtil.delete(dumpFile);
+                        }
+                    }
+
+                    cache.put(cacheKey, parsedFindings);
+                    return parsedFindings;
+                } finally {
+                    if (tempFile != null) {
+                        FileUtil.delete(tempFile);
+                    }
+                }
+            });
+            if (misraAddon != null) {
+                final Result result = withMisraFindings(project, cacheKey, findings, errors);
+                return result != null ? result : new Result(findings, errors);
+            }
+            return new Result(findings, errors);
+        } catch (final ExecutionException | CppcheckError | IOException | XMLStreamException ex) {
+            if (isReducible(ex, reducedCommandLine, fullCommandLine)) {
+                costModel.recordTimeout(vFile.getPath(), size, fullCommandLine.getKey());
+                notifyReduced(vFile);
+                return analyze(project, vFile, documentText, changedDocument, progress, priority, false);
+            }
+            CppcheckNotification.send("execution failed for " + vFile.getCanonicalPath(),
+                    ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                    NotificationType.ERROR);
+            errors.add("Cppcheck execution failed: " + ex.getClass().getSimpleName() + ": " + ex.getMessage().split("\n", 2)[0]);
+            return new Result(Collections.emptyList(), errors);
+        }
+    }
+
+    // adds the findings or the failure of the MISRA addon to the ones of Cppcheck - returns null if neither is available
+    // and the addon is not running
+    @Nullable
+    private static Result withMisraFindings(@NotNull final Project project,
+                                            @NotNull final String cacheKey,
+                                            @NotNull final List<CppcheckFinding> findings,
+                                            @NotNull final List<String> errors) {
+        // the addon stores its findings or its failure before it is no longer reported as running
+        final CppcheckMisraPipeline pipeline = CppcheckMisraPipeline.getInstance(project);
+        final boolean running = pipeline.isRunning(cacheKey);
+        final List<CppcheckFinding> misraFindings = CppcheckResultCache.getInstance(project).get(CppcheckMisraPipeline.getCacheKey(cacheKey));
+        if (misraFindings == null) {
+            final String failure = pipeline.getFailure(cacheKey);
+            if (failure != null) {
+                final List<String> combinedErrors = new ArrayList<>(errors);
+                combinedErrors.add(failure);
+                return new Result(findings, combinedErrors);
+            }
+            return running ? new Result(findings, errors, true) : null;
+        }
+        final List<CppcheckFinding> combined = new ArrayList<>(findings.size() + misraFindings.size());
+        combined.addAll(findings);
+        combined.addAll(misraFindings);
+        return new Result(combined, errors);
+    }
+
+    // analyzes the source file as stored on disk and returns the findings within the header - the findings for the other
+    // headers are kept so they can be shared
+    @Nullable
+    private static Result analyzeHeader(@NotNull final Project project,
+                                        @NotNull final VirtualFile header,
+                                        @NotNull final VirtualFile source,
+                                        @NotNull final Settings settings,
+                                        @NotNull final List<String> errors,
+                                        @Nullable final Document changedDocument,
+                                        @Nullable final Consumer<CppcheckFinding> progress,
+                                        @Nullable final CppcheckProcessLimiter.Priority priority,
+                                        final boolean cachedOnly) {
+        final CppcheckTranslationUnits translationUnits = CppcheckTranslationUnits.getInstance(project);
+        final CppcheckCommandLine fullCommandLine = getCommandLine(project, source, settings.cppcheckMisraPathFile);
+        final CppcheckCostModel costModel = CppcheckCostModel.getInstance(project);
+        final long size = source.getLength();
+        final CppcheckCommandLine reducedCommandLine = costModel.isReduced(source.getPath(), size, fullCommandLine.getKey()) ?
+                CppcheckCostModel.reduce(fullCommandLine) : null;
+        final CppcheckCommandLine commandLine = reducedCommandLine != null ? reducedCommandLine : fullCommandLine;
+        // a modified source file or header results in a different key so the source file is analyzed again
+        final String key = source.getPath() + ":" + source.getTimeStamp() + ":" + source.getLength() + "\n" +
+                commandLine.getKey() + "\n" + settings.suppressions.fingerprint + "\n" +
+                CppcheckIncludeGraph.getInstance(project).getFingerprint(source, CppcheckIncludeGraph.getIncludeDirectories(commandLine));
+
+        final CppcheckMetrics metrics = CppcheckMetrics.getInstance(project);
+        final List<CppcheckFinding> cachedFindings = translationUnits.getFindings(key, header);
+        if (cachedFindings != null) {
+            if (!cachedOnly) {
+                metrics.recordCacheHit(header.getPath(), cachedFindings.size());
+            }
+            return new Result(cachedFindings, errors);
+        }
+        if (cachedOnly) {
+            return null;
+        }
+
+        final CppCheckInspectionImpl inspectionImpl = new CppCheckInspectionImpl(settings.verboseLevel, settings.suppressions);
+        final String headerPath = normalizePath(header.getPath());
+        try {
+            // all headers waiting for the same source file share the analysis
+            CppcheckScheduler.getInstance(project).run(source, "translation unit\n" + key, null, null, indicator -> {
+                final Map<String, List<CppcheckFinding>> findings = new HashMap<>();
+                final CppcheckMetrics.Execution execution = new CppcheckMetrics.Execution();
+                final CppcheckOutputStore.Output rawOutput = new CppcheckOutputStore.Output();
+                Throwable failure = null;
+                try {
+                    inspectionImpl.executeCommandOnTranslationUnit(settings.cppcheckPathFile, commandLine, new File(source.getPath()),
+                            settings.cppcheckMisraPath, costModel.getTimeoutMillis(source.getPath(), size),
+                            priority != null ? priority : getPriority(project, header, changedDocument), indicator, rawOutput, execution, finding -> {
+                                final String path = normalizePath(finding.locations.get(0).file);
+                                final CppcheckFinding relocated = relocate(finding, path);
+                                findings.computeIfAbsent(path, p -> new ArrayList<>()).add(relocated);
+                                if (progress != null && path.equals(headerPath)) {
+                                    progress.accept(relocated);
+                                }
+                            });
+                } catch (final Throwable t) {
+                    failure = t;
+                    throw t;
+                } finally {
+                    rawOutput.close();
+                    if (isOutputComplete(failure)) {
+                        CppcheckOutputStore.getInstance(project).put(header.getPath(), rawOutput);
+                    }
+                }
+                int count = 0;
+                for (final List<CppcheckFinding> fileFindings : findings.values()) {
+                    count += fileFindings.size();
+                }
+                metrics.recordExecution(source.getPath(), execution, count);
+                if (reducedCommandLine == null) {
+                    costModel.record(source.getPath(), size, execution.wallNanos);
+                }
+                translationUnits.put(key, findings);
+                return Collections.emptyList();
+            });
+        } catch (final ExecutionException | CppcheckError | IOException | XMLStreamException ex) {
+            if (isReducible(ex, reducedCommandLine, fullCommandLine)) {
+                costModel.recordTimeout(source.getPath(), size, fullCommandLine.getKey());
+                notifyReduced(source);
+                return analyzeHeader(project, header, source, settings, errors, changedDocument, progress, priority, false);
+            }
+            CppcheckNotification.send("execution failed for " + source.getCanonicalPath(),
+                    ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                    NotificationType.ERROR);
+            errors.add("Cppcheck execution failed: " + ex.getClass().getSimpleName() + ": " + ex.getMessage().split("\n", 2)[0]);
+            return new Result(Collections.emptyList(), errors);
+        }
+
+        final List<CppcheckFinding> findings = translationUnits.getFindings(key, header);
+        return new Result(findings != null ? findings : Collections.emptyList(), errors);
+    }
+
+    // analyzes the files as they are stored on disk with a single Cppcheck invocation per set of options - the
+    // findings are passed to the consumer along with the normalized path of the file they are located in as soon as
+    // Cppcheck reports them. Files with imported findings are not analyzed. The files have to be the complete scope
+    // for unusedFunction to be reported. Returns the errors.
+    @NotNull
+    static List<String> analyzeFiles(@NotNull final Project project,
+                                     @NotNull final List<VirtualFile> files,
+                                     final boolean completeScope,
+                                     @NotNull final ProgressIndicator indicator,
+                                     @NotNull final BiConsumer<String, CppcheckFinding> consumer) {
+        final Settings settings = new Settings();
+        final Result settingsError = loadSettings(project, settings);
+        if (settingsError != null) {
+            return settingsError.errors;
+        }
+
+        final List<String> errors = new ArrayList<>(settings.errors);
+        // a header might be reported for each source file including it
+        final Set<String> reported = new HashSet<>();
+
+        // files using the same options from the compilation database can share an invocation
+        final Map<String, List<VirtualFile>> filesByOptions = new LinkedHashMap<>();
+        final Map<String, CppcheckCommandLine> commandLines = new HashMap<>();
+        final CppcheckImportedResults importedResults = CppcheckImportedResults.getInstance(project);
+        boolean allAnalyzed = completeScope;
+        for (final VirtualFile vFile : files) {
+            indicator.checkCanceled();
+            final List<CppcheckFinding> importedFindings = importedResults.get(vFile, settings.suppressions.fingerprint,
+                    getOptionsKey(project, vFile, settings));
+            if (importedFindings != null) {
+                allAnalyzed = false;
+                final String path = normalizePath(vFile.getPath());
+                for (final CppcheckFinding finding : importedFindings) {
+                    if (reported.add(path + ":" + finding.locations.get(0).line + ":" + finding.id + ":" + finding.msg)) {
+                        consumer.accept(path, finding);
+                    }
+                }
+                continue;
+            }
+            final CppcheckCommandLine commandLine = appendCompilationDatabaseOptions(project,
+                    CppcheckProjectSettings.getInstance(project).getCommandLine(vFile, settings.cppcheckMisraPathFile), vFile);
+            commandLines.putIfAbsent(commandLine.getKey(), commandLine);
+            filesByOptions.computeIfAbsent(commandLine.getKey(), o -> new ArrayList<>()).add(vFile);
+        }
+
+        // Cppcheck distributes the files to the jobs in the given order - starting with the most expensive ones lets the
+        // jobs finish at about the same time
+        final CppcheckCostModel costModel = CppcheckCostModel.getInstance(project);
+        for (final List<VirtualFile> groupFiles : filesByOptions.values()) {
+            costModel.sortLongestFirst(groupFiles);
+        }
+
+        final CppCheckInspectionImpl inspectionImpl = new CppCheckInspectionImpl(settings.verboseLevel, settings.suppressions);
+        // the functions might be used by files analyzed by another invocation or not at all
+        inspectionImpl.setWholeProgram(allAnalyzed && filesByOptions.size() == 1);
+        final CppcheckOutputStore outputStore = CppcheckOutputStore.getInstance(project);
+        outputStore.startBatch();
+        int group = 0;
+        for (final Map.Entry<String, List<VirtualFile>> entry : filesByOptions.entrySet()) {
+            indicator.checkCanceled();
+            final String outputKey = CppcheckOutputStore.getBatchKey(++group);
+            // the same include directories as for the on-the-fly analysis - the ones of all files since they share the
+            // invocation
+            final Set<String> includeDirs = new LinkedHashSet<>();
+            for (final VirtualFile vFile : entry.getValue()) {
+                final String includeDir = getIncludeDir(vFile);
+                if (includeDir != null) {
+                    includeDirs.add(includeDir);
+                }
+            }
+            final CppcheckCommandLine commandLine = commandLines.get(entry.getKey()).prepend(new ArrayList<>(includeDirs));
+            File fileList = null;
+            try {
+                fileList = FileUtil.createTempFile("cppcheck_files_", ".txt", true);
+                final StringBuilder sb = new StringBuilder();
+                for (final VirtualFile vFile : entry.getValue()) {
+                    sb.append(vFile.getPath()).append('\n');
+                }
+                FileUtil.writeToFile(fileList, sb.toString());
+
+                indicator.setText("Cppcheck: analyzing " + entry.getValue().size() + " files");
+
+                final CppcheckMetrics.Execution execution = new CppcheckMetrics.Execution();
+                final int reportedBefore = reported.size();
+
+                // the analyzer information of unchanged files is re-used from the previous run
+                final CppcheckBuildDirectory buildDirectory = CppcheckBuildDirectory.getInstance(project);
+                final File buildDir = buildDirectory.getDirectory(entry.getKey());
+                final ReentrantLock buildDirLock = buildDirectory.lock(buildDir, indicator);
+
+                // keep the output for "Show Cppcheck XML Output" - also if the execution failed but not if it was cancelled
+                final CppcheckOutputStore.Output rawOutput = new CppcheckOutputStore.Output();
+                Throwable failure = null;
+                try {
+                    inspectionImpl.executeCommandOnFiles(settings.cppcheckPathFile, commandLine, fileList, buildDir,
+                            getJobCount(commandLine), settings.cppcheckMisraPath, costModel.getTimeoutMillis(entry.getValue(), getParallelJobs(commandLine)),
+                            indicator, rawOutput, execution, finding -> {
+                                final String path = normalizePath(finding.locations.get(0).file);
+                                if (!reported.add(path + ":" + finding.locations.get(0).line + ":" + finding.id + ":" + finding.msg)) {
+                                    return;
+                                }
+                                consumer.accept(path, relocate(finding, path));
+                            });
+                } catch (final Throwable t) {
+                    failure = t;
+                    throw t;
+                } finally {
+                    rawOutput.close();
+                    if (isOutputComplete(failure)) {
+                        outputStore.put(outputKey, rawOutput);
+                    }
+                    buildDirectory.cleanup(buildDir);
+                    buildDirLock.unlock();
+                }
+                CppcheckMetrics.getInstance(project).recordExecution("<Inspect Code: " + entry.getValue().size() + " files>",
+                        execution, reported.size() - reportedBefore);
+            } catch (final ExecutionException | CppcheckError | IOException | XMLStreamException ex) {
+                CppcheckNotification.send("execution failed for batch analysis",
+                        ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                        NotificationType.ERROR);
+                errors.add("Cppcheck execution failed: " + ex.getClass().getSimpleName() + ": " + ex.getMessage().split("\n", 2)[0]);
+            } finally {
+                if (fileList != null) {
+                    FileUtil.delete(fileList);
+                }
+            }
+        }
+        return errors;
+    }
+
+    // whether the file on disk has the given contents - the line separators do not matter since they do not affect
+    // the locations
+    private static boolean isOnDisk(@NotNull final VirtualFile vFile, @NotNull final String documentText) {
+        if (FileDocumentManager.getInstance().isFileModified(vFile)) {
+            return false;
+        }
+        try {
+            return StringUtil.convertLineSeparators(FileUtil.loadFile(new File(vFile.getPath()), vFile.getCharset())).equals(documentText);
+        } catch (final IOException ex) {
+            return false;
+        }
+    }
+
+    // whether the analysis timed out with the full options and can be retried with reduced ones
+    // a cancelled or timed out execution only wrote part of the output - the previous output is kept then
+    private static boolean isOutputComplete(@Nullable final Throwable failure) {
+        return !(failure instanceof ProcessCanceledException) && !(failure instanceof CppcheckError && ((CppcheckError)failure).timeout);
+    }
+
+    private static boolean isReducible(@NotNull final Throwable ex,
+                                       @Nullable final CppcheckCommandLine reducedCommandLine,
+                                       @NotNull final CppcheckCommandLine fullCommandLine) {
+        return ex instanceof CppcheckError && ((CppcheckError)ex).timeout && reducedCommandLine == null &&
+                CppcheckCostModel.reduce(fullCommandLine) != null;
+    }
+
+    private static void notifyReduced(@NotNull final VirtualFile vFile) {
+        CppcheckNotification.send("analysis timed out for " + vFile.getCanonicalPath(),
+                "The file is analyzed with --max-configs=1 (and --check-level=normal instead of exhaustive) for the next 30 minutes " +
+                        "unless it shrinks considerably or its options change.",
+                NotificationType.WARNING);
+    }
+
+    // the number of parallel jobs if it was not specified by the user - limited by the available process slots
+    private static int getJobCount(@NotNull final CppcheckCommandLine commandLine) {
+        return commandLine.hasOptionWithPrefix("-j") ? 0 : CppcheckProcessLimiter.getMaxProcesses();
+    }
+
+    // the number of parallel jobs Cppcheck uses - the last "-j<n>" or "-j <n>" given by the user wins
+    private static int getParallelJobs(@NotNull final CppcheckCommandLine commandLine) {
+        final int jobCount = getJobCount(commandLine);
+        if (jobCount > 0) {
+            return jobCount;
+        }
+        final List<String> parameters = commandLine.getParameters();
+        for (int i = parameters.size() - 1; i >= 0; --i) {
+            final String parameter = parameters.get(i);
+            if (!parameter.startsWith("-j")) {
+                continue;
+            }
+            final String value = parameter.length() > 2 ? parameter.substring(2) : i + 1 < parameters.size() ? parameters.get(i + 1) : "";
+            try {
+                return Math.max(1, Integer.parseInt(value));
+            } catch (final NumberFormatException ex) {
+                return 1;
+            }
+        }
+        return 1;
+    }
+
+    @NotNull
+    private static CppcheckProcessLimiter.Priority getPriority(@NotNull final Project project,
+                                                               @NotNull final VirtualFile vFile,
+                                                               @Nullable final Document changedDocument) {
+        if (changedDocument == null) {
+            return CppcheckProcessLimiter.Priority.BATCH;
+        }
+        for (final VirtualFile selectedFile : FileEditorManager.getInstance(project).getSelectedFiles()) {
+            if (selectedFile.equals(vFile)) {
+                return CppcheckProcessLimiter.Priority.FOCUSED;
+            }
+        }
+        return CppcheckProcessLimiter.Priority.ON_THE_FLY;
+    }
+
+    @NotNull
+    static String normalizePath(@NotNull final String path) {
+        return FileUtil.toSystemIndependentName(Paths.get(path).toAbsolutePath().normalize().toString());
+    }
+
+    // converts a finding with full paths into one which is relative to the given file
+    @NotNull
+    private static CppcheckFinding relocate(@NotNull final CppcheckFinding finding, @NotNull final String path) {
+        final List<CppcheckFinding.Location> locations = new ArrayList<>(finding.locations.size());
+        for (final CppcheckFinding.Location location : finding.locations) {
+            final String locationPath = normalizePath(location.file);
+            locations.add(new CppcheckFinding.Location(new File(locationPath).getName(),
+                    FileUtil.pathsEqual(locationPath, path),
+                    location.line, location.column, location.info));
+        }
+        return new CppcheckFinding(finding.id, finding.severity, finding.msg, finding.inconclusive, locations);
+    }
+
+    @NotNull
+    private static Result error(@NotNull final String msg) {
+        return new Result(Collections.emptyList(), Collections.singletonList(msg));
+    }
+
+    // the include directories Cppcheck uses for the file
+    @NotNull
+    static List<String> getIncludeDirectories(@NotNull final Project project, @NotNull final VirtualFile vFile) {
+        return CppcheckIncludeGraph.getIncludeDirectories(getCommandLine(project, vFile, null));
+    }
+
+    // identifies the binary and the options the file is analyzed with - null if the configuration does not allow an analysis
+    @Nullable
+    static String getOptionsKey(@NotNull final Project project, @NotNull final VirtualFile vFile) {
+        final Settings settings = new Settings();
+        if (loadSettings(project, settings) != null) {
+            return null;
+        }
+        return getOptionsKey(project, vFile, settings);
+    }
+
+    @NotNull
+    private static String getOptionsKey(@NotNull final Project project, @NotNull final VirtualFile vFile, @NotNull final Settings settings) {
+        return settings.cppcheckPathFile.getPath() + ":" + settings.cppcheckPathFile.lastModified() + "\n" +
+                getCommandLine(project, vFile, settings.cppcheckMisraPathFile).getKey();
+    }
+
+    // the options of the profile the file belongs to extended by its directory and the compilation database
+    @NotNull
+    private static CppcheckCommandLine getCommandLine(@NotNull final Project project,
+                                                      @NotNull final VirtualFile vFile,
+                                                      @Nullable final File cppcheckMisraPathFile) {
+        final CppcheckCommandLine template = CppcheckProjectSettings.getInstance(project).getCommandLine(vFile, cppcheckMisraPathFile);
+        return appendCompilationDatabaseOptions(project, prependIncludeDir(template, vFile), vFile);
+    }
+
+    // the options from the compilation database are appended so they take precedence over the configured ones
+    @NotNull
+    private static CppcheckCommandLine appendCompilationDatabaseOptions(@NotNull final Project project,
+                                                                        @NotNull final CppcheckCommandLine commandLine,
+                                                                        @NotNull final VirtualFile vFile) {
+        if (!CppcheckCompilationDatabase.isEnabled()) {
+            return commandLine;
+        }
+        final List<String> databaseOptions = CppcheckCompilationDatabase.getInstance(project).getOptions(vFile);
+        if (databaseOptions == null) {
+            return commandLine;
+        }
+        return commandLine.append(databaseOptions);
+    }
+
+    @NotNull
+    private static CppcheckCommandLine prependIncludeDir(@NotNull final CppcheckCommandLine commandLine, @NotNull final VirtualFile vFile) {
+        final String includeDir = getIncludeDir(vFile);
+        if (includeDir == null) {
+            return commandLine;
+        }
+        return commandLine.prepend(Collections.singletonList(includeDir));
+    }
+
+    // the directory of the file as -I option
+    @Nullable
+    private static String getIncludeDir(@NotNull final VirtualFile vFile) {
+        final VirtualFile dir = vFile.getParent();
+        if (dir == null) {
+            return null;
+        }
+        final String path = dir.getCanonicalPath();
+        if (path == null) {
+            return null;
+        }
+        return "-I" + path;
+    }
+}
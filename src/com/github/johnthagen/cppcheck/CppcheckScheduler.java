@@ -0,0 +1,247 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// makes sure there is only a single Cppcheck process per file and that it is killed as soon as its result is obsolete
+class CppcheckScheduler {
+    // how long the document needs to be unchanged before an on-the-fly analysis is started
+    private static final int DEBOUNCE_MS = 300;
+    private static final int POLL_MS = 50;
+
+    interface Analysis {
+        @NotNull
+        List<CppcheckFinding> run(@NotNull ProgressIndicator indicator) throws ExecutionException, IOException, XMLStreamException;
+    }
+
+    private static class Run {
+        Run(@NotNull final String key) {
+            this.key = key;
+        }
+
+        final String key;
+        // cancelled when the result is no longer of interest - this kills the process
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        final CompletableFuture<List<CppcheckFinding>> result = new CompletableFuture<>();
+        int waiters = 0;
+        // a different text of the same file is analyzed on the fly instead
+        volatile boolean superseded = false;
+    }
+
+    private final Map<String, Run> runsByKey = new HashMap<>();
+    private final Map<VirtualFile, Run> runsByFile = new HashMap<>();
+
+    @NotNull
+    static CppcheckScheduler getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckScheduler.class);
+    }
+
+    // the document is only provided for on-the-fly analysis along with the analyzed text - changing it will abort the
+    // analysis
+    @NotNull
+    List<CppcheckFinding> run(@NotNull final VirtualFile vFile,
+                              @NotNull final String key,
+                              @Nullable final Document document,
+                              @Nullable final CharSequence documentText,
+                              @NotNull final Analysis analysis) throws ExecutionException, IOException, XMLStreamException {
+        final long modificationStamp = document != null && documentText != null ? debounce(document, documentText) : 0;
+
+        while (true) {
+            final Run run;
+            final boolean owner;
+            synchronized (this) {
+                final Run existing = runsByKey.get(key);
+                if (existing != null) {
+                    run = existing;
+                    owner = false;
+                }
+                else {
+                    run = new Run(key);
+                    runsByKey.put(key, run);
+                    if (document != null) {
+                        // a different text for the same file makes the previous on-the-fly analysis obsolete
+                        final Run previous = runsByFile.put(vFile, run);
+                        if (previous != null) {
+                            previous.superseded = true;
+                            previous.indicator.cancel();
+                        }
+                    }
+                    owner = true;
+                }
+                ++run.waiters;
+            }
+
+            try {
+                if (owner) {
+                    return execute(vFile, run, document, modificationStamp, analysis);
+                }
+                return await(run);
+            } catch (final ProcessCanceledException ex) {
+                // the run might have been cancelled on behalf of another caller - start a new one if we are still
+                // interested in the result
+                ProgressManager.checkCanceled();
+                if (document != null && (run.superseded || document.getModificationStamp() != modificationStamp)) {
+                    throw ex;
+                }
+            } finally {
+                synchronized (this) {
+                    --run.waiters;
+                }
+            }
+        }
+    }
+
+    // an indicator for analyzing the given state of the document in the background - it is cancelled once the document
+    // is modified or the project is closed. Disposing the returned disposable stops tracking the document.
+    @NotNull
+    static ProgressIndicator createIndicator(@NotNull final Project project,
+                                             @NotNull final Document document,
+                                             final long modificationStamp,
+                                             @NotNull final Disposable disposable) {
+        final ProgressIndicator indicator = new EmptyProgressIndicator();
+        Disposer.register(disposable, indicator::cancel);
+        if (project.isDisposed()) {
+            indicator.cancel();
+            return indicator;
+        }
+        Disposer.register(project, disposable);
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull final DocumentEvent event) {
+                indicator.cancel();
+            }
+        }, disposable);
+        if (document.getModificationStamp() != modificationStamp) {
+            indicator.cancel();
+        }
+        return indicator;
+    }
+
+    // waits until the document was not modified for a while - returns its modification stamp which belongs to the
+    // analyzed text
+    private static long debounce(@NotNull final Document document, @NotNull final CharSequence documentText) {
+        final long modificationStamp = document.getModificationStamp();
+        final long end = System.currentTimeMillis() + DEBOUNCE_MS;
+        while (System.currentTimeMillis() < end) {
+            ProgressManager.checkCanceled();
+            if (document.getModificationStamp() != modificationStamp) {
+                throw new ProcessCanceledException();
+            }
+            try {
+                Thread.sleep(POLL_MS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            }
+        }
+        // the stamp is read again after the wait - the text was taken before the wait started so it might not be the
+        // current one even if the document was not modified during the wait
+        if (document.getModificationStamp() != modificationStamp ||
+                !StringUtil.equals(document.getImmutableCharSequence(), documentText)) {
+            throw new ProcessCanceledException();
+        }
+        return modificationStamp;
+    }
+
+    private synchronized boolean hasWaiters(@NotNull final Run run) {
+        return run.waiters > 1;
+    }
+
+    @NotNull
+    private List<CppcheckFinding> execute(@NotNull final VirtualFile vFile,
+                                          @NotNull final Run run,
+                                          @Nullable final Document document,
+                                          final long modificationStamp,
+                                          @NotNull final Analysis analysis) throws ExecutionException, IOException, XMLStreamException {
+        final ProgressIndicator callerIndicator = ProgressManager.getInstance().getProgressIndicator();
+        final Disposable disposable = Disposer.newDisposable();
+        try {
+            if (document != null) {
+                document.addDocumentListener(new DocumentListener() {
+                    @Override
+                    public void documentChanged(@NotNull final DocumentEvent event) {
+                        run.indicator.cancel();
+                    }
+                }, disposable);
+                // modified after the debounce but before the listener was added
+                if (document.getModificationStamp() != modificationStamp) {
+                    run.indicator.cancel();
+                }
+            }
+
+            final List<CppcheckFinding> findings = analysis.run(new EmptyProgressIndicator() {
+                @Override
+                public boolean isCanceled() {
+                    if (callerIndicator != null && callerIndicator.isCanceled() && !hasWaiters(run)) {
+                        run.indicator.cancel();
+                    }
+                    return run.indicator.isCanceled();
+                }
+            });
+            run.result.complete(findings);
+            return findings;
+        } catch (final ExecutionException | IOException | XMLStreamException | RuntimeException | Error ex) {
+            run.result.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            Disposer.dispose(disposable);
+            synchronized (this) {
+                runsByKey.remove(run.key, run);
+                runsByFile.remove(vFile, run);
+            }
+        }
+    }
+
+    @NotNull
+    private static List<CppcheckFinding> await(@NotNull final Run run) throws ExecutionException, IOException, XMLStreamException {
+        while (true) {
+            ProgressManager.checkCanceled();
+            try {
+                return run.result.get(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException e) {
+                // keep waiting
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            } catch (final java.util.concurrent.ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof ExecutionException) {
+                    throw (ExecutionException)cause;
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException)cause;
+                }
+                if (cause instanceof XMLStreamException) {
+                    throw (XMLStreamException)cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                throw (Error)cause;
+            }
+        }
+    }
+}
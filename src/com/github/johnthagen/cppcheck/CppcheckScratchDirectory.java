@@ -0,0 +1,64 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+// the directory the copies of modified documents are written to - it is re-used for all analyses of the project. It
+// gets a random name and is only accessible by the current user since the base directory is shared with other users.
+class CppcheckScratchDirectory implements Disposable {
+    private final Project project;
+    private File directory;
+
+    CppcheckScratchDirectory(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckScratchDirectory getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckScratchDirectory.class);
+    }
+
+    @NotNull
+    synchronized File getDirectory() throws IOException {
+        if (directory == null || !directory.isDirectory()) {
+            final Path base = getBaseDirectory().toPath();
+            final String prefix = "clion-cppcheck-" + project.getLocationHash() + "-";
+            final Path path = FileSystems.getDefault().supportedFileAttributeViews().contains("posix") ?
+                    Files.createTempDirectory(base, prefix, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))) :
+                    Files.createTempDirectory(base, prefix);
+            directory = path.toFile();
+        }
+        return directory;
+    }
+
+    // prefer a RAM-backed file system so the copies never hit the disk
+    @NotNull
+    private static File getBaseDirectory() {
+        if (SystemInfo.isLinux) {
+            final File shm = new File("/dev/shm");
+            if (shm.isDirectory() && shm.canWrite()) {
+                return shm;
+            }
+        }
+        return new File(FileUtil.getTempDirectory());
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (directory != null) {
+            FileUtil.delete(directory);
+            directory = null;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.wm.StatusBar;
+import com.intellij.openapi.wm.StatusBarWidget;
+import com.intellij.openapi.wm.StatusBarWidgetFactory;
+import com.intellij.util.Consumer;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.awt.event.MouseEvent;
+
+// shows the number of running and queued Cppcheck processes
+class CppcheckStatusBarWidgetFactory implements StatusBarWidgetFactory {
+    private static final String ID = "CppcheckProcesses";
+
+    @NotNull
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Nls
+    @NotNull
+    @Override
+    public String getDisplayName() {
+        return "Cppcheck Processes";
+    }
+
+    @Override
+    public boolean isAvailable(@NotNull final Project project) {
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public StatusBarWidget createWidget(@NotNull final Project project) {
+        return new Widget();
+    }
+
+    @Override
+    public void disposeWidget(@NotNull final StatusBarWidget widget) {
+        Disposer.dispose(widget);
+    }
+
+    @Override
+    public boolean canBeEnabledOn(@NotNull final StatusBar statusBar) {
+        return true;
+    }
+
+    private static class Widget implements StatusBarWidget, StatusBarWidget.TextPresentation {
+        private StatusBar statusBar;
+
+        @NotNull
+        @Override
+        public String ID() {
+            return ID;
+        }
+
+        @Override
+        public void install(@NotNull final StatusBar statusBar) {
+            this.statusBar = statusBar;
+            ApplicationManager.getApplication().getMessageBus().connect(this).subscribe(CppcheckProcessLimiter.TOPIC,
+                    () -> ApplicationManager.getApplication().invokeLater(() -> {
+                        if (this.statusBar != null) {
+                            this.statusBar.updateWidget(ID);
+                        }
+                    }));
+        }
+
+        @Override
+        public void dispose() {
+            statusBar = null;
+        }
+
+        @Nullable
+        @Override
+        public WidgetPresentation getPresentation() {
+            return this;
+        }
+
+        // empty while idle so the widget takes no space
+        @NotNull
+        @Override
+        public String getText() {
+            final CppcheckProcessLimiter limiter = CppcheckProcessLimiter.getInstance();
+            final int running = limiter.getRunningProcesses();
+            final int queued = limiter.getQueueDepth();
+            if (running == 0 && queued == 0) {
+                return "";
+            }
+            return "Cppcheck: " + running + " running, " + queued + " queued";
+        }
+
+        @Override
+        public float getAlignment() {
+            return Component.CENTER_ALIGNMENT;
+        }
+
+        @Nullable
+        @Override
+        public String getTooltipText() {
+            return "Running and queued Cppcheck processes (at most " + CppcheckProcessLimiter.getMaxProcesses() + " concurrently)";
+        }
+
+        @Nullable
+        @Override
+        public Consumer<MouseEvent> getClickConsumer() {
+            return null;
+        }
+    }
+}
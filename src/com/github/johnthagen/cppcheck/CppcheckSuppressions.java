@@ -0,0 +1,275 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// the suppressions from the configuration and the project suppressions file compiled into a matcher which is applied
+// while the output is parsed - it is only re-compiled if one of them changes
+//
+// each line contains one of the following rules (lines starting with # are ignored):
+//   <id>[:<path>[:<line>]]  - the format of --suppressions-list - the id and path may contain the wildcards * and ?
+//   severity=<severity>     - e.g. severity=style
+//   message=<regex>         - matched against a part of the message
+class CppcheckSuppressions {
+    static final String PROJECT_FILE_NAME = ".cppcheck-suppressions";
+
+    private static final String SEVERITY_PREFIX = "severity=";
+    private static final String MESSAGE_PREFIX = "message=";
+
+    private static final Set<String> BUILTIN_IDS = new HashSet<>(Arrays.asList(
+            // Skip the "toomanyconfigs" error
+            /*
+                <error id="toomanyconfigs" severity="information" msg="Too many #ifdef configurations - cppcheck only checks 1 of 12 configurations. Use --force to check all configurations." verbose="The checking of the file will be interrupted because there are too many #ifdef configurations. Checking of all #ifdef configurations can be forced by --force command line option or from GUI preferences. However that may increase the checking time." cwe="398">
+                    <location file="C:\Users\Name\AppData\Local\Temp\___valueflow.cpp" line="0" column="0"/>
+                </error>
+            */
+            "toomanyconfigs",
+            // Skip the "missingIncludeSystem" error
+            /*
+                <error id="missingIncludeSystem" severity="information" msg="Cppcheck cannot find all the include files (use --check-config for details)" verbose="Cppcheck cannot find all the include files. Cppcheck can check the code without the include files found. But the results will probably be more accurate if all the include files are found. Please check your project&apos;s include directories and add all of them as include directories for Cppcheck. To see what files Cppcheck cannot find use --check-config."/>
+            */
+            "missingIncludeSystem",
+            // suppress this warnings for now - will be properly handled in an upcoming patch
+            "noValidConfiguration",
+            "missingInclude",
+            // we are never interested in these
+            "unmatchedSuppression",
+            "purgedConfiguration",
+            // Generated since 2.13.0 when "information" is enabled.
+            /*
+                <error id="checkersReport" severity="information" msg="Active checkers: 59/592 (use --checkers-report=&lt;filename&gt; to see details)" verbose="Active checkers: 59/592 (use --checkers-report=&lt;filename&gt; to see details)"/>
+             */
+            "checkersReport"
+    ));
+
+    private static class LocationRule {
+        LocationRule(@Nullable final Pattern id, @NotNull final Pattern path, final int line) {
+            this.id = id;
+            this.path = path;
+            this.line = line;
+        }
+
+        // only set if the id contains wildcards
+        final Pattern id;
+        final Pattern path;
+        // 0 for all lines
+        final int line;
+
+        boolean matches(@NotNull final String path, final int line) {
+            return (this.line == 0 || this.line == line) && this.path.matcher(path).matches();
+        }
+    }
+
+    static class Matcher {
+        private final Set<String> ids = new HashSet<>(BUILTIN_IDS);
+        // the ids with wildcards combined into a single pattern
+        private final Pattern idPattern;
+        private final Set<String> severities = new HashSet<>();
+        // all message rules combined into a single pattern
+        private final Pattern messagePattern;
+        // by the id
+        private final Map<String, List<LocationRule>> locationRules = new HashMap<>();
+        private final List<LocationRule> wildcardLocationRules = new ArrayList<>();
+        // identifies the rules for the result cache
+        final String fingerprint;
+        // invalid rules
+        final List<String> errors = new ArrayList<>();
+
+        Matcher(@NotNull final List<String> rules) {
+            final List<String> idPatterns = new ArrayList<>();
+            final List<String> messagePatterns = new ArrayList<>();
+            final StringBuilder fingerprint = new StringBuilder();
+            for (final String rule : rules) {
+                fingerprint.append(rule).append('\n');
+                if (rule.startsWith(SEVERITY_PREFIX)) {
+                    severities.add(rule.substring(SEVERITY_PREFIX.length()).trim());
+                    continue;
+                }
+                if (rule.startsWith(MESSAGE_PREFIX)) {
+                    final String regex = rule.substring(MESSAGE_PREFIX.length());
+                    try {
+                        Pattern.compile(regex);
+                        messagePatterns.add("(?:" + regex + ")");
+                    } catch (final PatternSyntaxException e) {
+                        errors.add("Invalid Cppcheck suppression '" + rule + "': " + e.getDescription());
+                    }
+                    continue;
+                }
+
+                final int idEnd = rule.indexOf(':');
+                final String id = (idEnd == -1 ? rule : rule.substring(0, idEnd)).trim();
+                final boolean wildcard = id.indexOf('*') != -1 || id.indexOf('?') != -1;
+                if (idEnd == -1) {
+                    if (wildcard) {
+                        idPatterns.add(globToRegex(id));
+                    }
+                    else {
+                        ids.add(id);
+                    }
+                    continue;
+                }
+
+                // the path might contain a drive letter so only a trailing number is treated as line
+                String path = rule.substring(idEnd + 1).trim();
+                int line = 0;
+                final int lineStart = path.lastIndexOf(':');
+                if (lineStart != -1 && lineStart + 1 < path.length() && isNumber(path.substring(lineStart + 1))) {
+                    line = Integer.parseInt(path.substring(lineStart + 1));
+                    path = path.substring(0, lineStart);
+                }
+                final Pattern pathPattern = Pattern.compile("(?:^|.*/)" + globToRegex(path.replace('\\', '/')) + "$");
+                if (wildcard) {
+                    wildcardLocationRules.add(new LocationRule(Pattern.compile(globToRegex(id)), pathPattern, line));
+                }
+                else {
+                    locationRules.computeIfAbsent(id, k -> new ArrayList<>()).add(new LocationRule(null, pathPattern, line));
+                }
+            }
+            idPattern = idPatterns.isEmpty() ? null : Pattern.compile(String.join("|", idPatterns));
+            messagePattern = messagePatterns.isEmpty() ? null : Pattern.compile(String.join("|", messagePatterns));
+            this.fingerprint = fingerprint.toString();
+        }
+
+        // checked before anything else of the entry is read
+        boolean isIgnoredId(@NotNull final String id) {
+            return ids.contains(id) || (idPattern != null && idPattern.matcher(id).matches());
+        }
+
+        // checked before the locations are read
+        boolean isIgnoredBySeverityOrMessage(@Nullable final String severity, @Nullable final String message) {
+            return (severity != null && severities.contains(severity)) ||
+                    (messagePattern != null && message != null && messagePattern.matcher(message).find());
+        }
+
+        // checked once the location is known - the path has to be absolute
+        boolean isIgnoredAt(@NotNull final String id, @NotNull final String path, final int line) {
+            final List<LocationRule> rules = locationRules.get(id);
+            if (rules == null && wildcardLocationRules.isEmpty()) {
+                return false;
+            }
+            final String normalizedPath = path.replace('\\', '/');
+            if (rules != null) {
+                for (final LocationRule rule : rules) {
+                    if (rule.matches(normalizedPath, line)) {
+                        return true;
+                    }
+                }
+            }
+            for (final LocationRule rule : wildcardLocationRules) {
+                if (rule.id.matcher(id).matches() && rule.matches(normalizedPath, line)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Project project;
+    private Matcher matcher;
+    private String configuredRules;
+    private long projectFileStamp;
+
+    CppcheckSuppressions(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckSuppressions getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckSuppressions.class);
+    }
+
+    // enabled unless disabled in the configuration
+    static boolean isInlineEnabled() {
+        final String enabled = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_INLINE_SUPPRESSIONS);
+        return enabled == null || Boolean.parseBoolean(enabled);
+    }
+
+    @NotNull
+    synchronized Matcher getMatcher() {
+        final String rules = Properties.get(Configuration.CONFIGURATION_KEY_CPPCHECK_SUPPRESSIONS);
+        final File projectFile = getProjectFile();
+        final long stamp = projectFile != null ? projectFile.lastModified() : 0;
+        if (matcher != null && stamp == projectFileStamp && (rules == null ? configuredRules == null : rules.equals(configuredRules))) {
+            return matcher;
+        }
+
+        final List<String> lines = new ArrayList<>();
+        addRules(lines, rules);
+        if (stamp != 0) {
+            try {
+                addRules(lines, FileUtil.loadFile(projectFile));
+            } catch (final IOException e) {
+                CppcheckNotification.send("could not read " + projectFile.getAbsolutePath(),
+                        e.getClass().getSimpleName() + ": " + e.getMessage(),
+                        NotificationType.ERROR);
+            }
+        }
+        matcher = new Matcher(lines);
+        configuredRules = rules;
+        projectFileStamp = stamp;
+        return matcher;
+    }
+
+    @Nullable
+    private File getProjectFile() {
+        final String basePath = project.getBasePath();
+        return basePath != null ? new File(basePath, PROJECT_FILE_NAME) : null;
+    }
+
+    private static void addRules(@NotNull final List<String> lines, @Nullable final String text) {
+        if (text == null) {
+            return;
+        }
+        for (final String line : text.split("\\r?\\n")) {
+            final String rule = line.trim();
+            if (!rule.isEmpty() && !rule.startsWith("#")) {
+                lines.add(rule);
+            }
+        }
+    }
+
+    private static boolean isNumber(@NotNull final String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    private static String globToRegex(@NotNull final String glob) {
+        final StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); ++i) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literalStart < i) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiSearchHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// headers are analyzed through a source file including them - the findings of such an analysis are shared by all
+// headers included by the source file
+class CppcheckTranslationUnits {
+    // limits the number of files which are checked to find an including source file
+    private static final int MAX_CANDIDATES = 50;
+    private static final int MAX_ANALYSES = 64;
+
+    private final Project project;
+    private final Map<VirtualFile, VirtualFile> sourceByHeader = new HashMap<>();
+    // the findings by the normalized path of the file they are located in - by the path and state of the source file,
+    // the state of the files it includes and the options. In least recently used order.
+    private final LinkedHashMap<String, Map<String, List<CppcheckFinding>>> analyses = new LinkedHashMap<>(16, 0.75f, true);
+
+    CppcheckTranslationUnits(@NotNull final Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    static CppcheckTranslationUnits getInstance(@NotNull final Project project) {
+        return ServiceManager.getService(project, CppcheckTranslationUnits.class);
+    }
+
+    // returns a source file of the project including the header - the ones closest to the header are preferred
+    @Nullable
+    VirtualFile findIncludingSource(@NotNull final VirtualFile header) {
+        final VirtualFile cached;
+        synchronized (this) {
+            cached = sourceByHeader.get(header);
+        }
+        if (cached != null && cached.isValid() && includes(cached, header)) {
+            return cached;
+        }
+
+        final String word = header.getNameWithoutExtension();
+        final List<VirtualFile> candidates = new ArrayList<>();
+        ApplicationManager.getApplication().runReadAction(() -> {
+            if (DumbService.isDumb(project)) {
+                return;
+            }
+            PsiSearchHelper.getInstance(project).processAllFilesWithWord(word, GlobalSearchScope.projectScope(project), psiFile -> {
+                final VirtualFile vFile = psiFile.getVirtualFile();
+                if (vFile != null && vFile.isInLocalFileSystem() && SupportedExtensions.isCFamilyFile(vFile) && !SupportedExtensions.isIncludedFile(vFile)) {
+                    candidates.add(vFile);
+                }
+                return candidates.size() < MAX_CANDIDATES;
+            }, true);
+        });
+
+        final String headerDir = header.getParent() != null ? header.getParent().getPath() : "";
+        candidates.sort((a, b) -> {
+            final int distance = Integer.compare(commonPrefixLength(b.getPath(), headerDir), commonPrefixLength(a.getPath(), headerDir));
+            return distance != 0 ? distance : a.getPath().compareTo(b.getPath());
+        });
+        for (final VirtualFile candidate : candidates) {
+            ProgressManager.checkCanceled();
+            if (includes(candidate, header)) {
+                synchronized (this) {
+                    sourceByHeader.put(header, candidate);
+                }
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static int commonPrefixLength(@NotNull final String a, @NotNull final String b) {
+        final int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            ++i;
+        }
+        return i;
+    }
+
+    // checks the contents on disk since that is what Cppcheck will see - the includes are resolved the same way as by
+    // Cppcheck and only read again once the file changed
+    private boolean includes(@NotNull final VirtualFile source, @NotNull final VirtualFile header) {
+        return CppcheckIncludeGraph.getInstance(project).getIncludedFiles(source, CppcheckRunner.getIncludeDirectories(project, source))
+                .contains(header);
+    }
+
+    // returns null if the source file was not analyzed yet in this state
+    @Nullable
+    synchronized List<CppcheckFinding> getFindings(@NotNull final String key, @NotNull final VirtualFile header) {
+        final Map<String, List<CppcheckFinding>> findings = analyses.get(key);
+        if (findings == null) {
+            return null;
+        }
+        final List<CppcheckFinding> headerFindings = findings.get(CppcheckRunner.normalizePath(header.getPath()));
+        return headerFindings != null ? headerFindings : Collections.emptyList();
+    }
+
+    synchronized void put(@NotNull final String key, @NotNull final Map<String, List<CppcheckFinding>> findings) {
+        analyses.put(key, findings);
+        if (analyses.size() > MAX_ANALYSES) {
+            analyses.remove(analyses.keySet().iterator().next());
+        }
+    }
+}
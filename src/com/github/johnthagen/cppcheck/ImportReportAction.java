@@ -0,0 +1,71 @@
+package com.github.johnthagen.cppcheck;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+
+// imports the findings of a Cppcheck --xml report (e.g. created by the CI) for a revision of the git repository - they
+// are shown instead of analyzing the files locally as long as the files still have the same contents as in that revision
+public class ImportReportAction extends AnAction {
+    @Override
+    public void actionPerformed(@NotNull final AnActionEvent anActionEvent) {
+        final Project project = anActionEvent.getProject();
+        if (project == null) {
+            return;
+        }
+
+        final VirtualFile reportFile = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFileDescriptor("xml"), project, null);
+        if (reportFile == null) {
+            return;
+        }
+        final File report = VfsUtilCore.virtualToIoFile(reportFile);
+
+        final String input = Messages.showInputDialog(project,
+                "The git revision the report was created for (e.g. the commit built by the CI):",
+                "Import Cppcheck XML Results", Messages.getQuestionIcon(), "HEAD", null);
+        if (input == null || input.trim().isEmpty()) {
+            return;
+        }
+        final String revision = input.trim();
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Importing Cppcheck results", true) {
+            @Override
+            public void run(@NotNull final ProgressIndicator indicator) {
+                try {
+                    final CppcheckImportedResults.Summary summary = CppcheckImportedResults.getInstance(project).importReport(report, revision, indicator);
+                    CppcheckNotification.send("imported " + report.getName(),
+                            summary.findings + " findings in " + summary.files + " files imported - " +
+                                    summary.skipped + " findings in files not found in the project or in " + revision + " were skipped.",
+                            NotificationType.INFORMATION);
+                } catch (final IOException | XMLStreamException ex) {
+                    CppcheckNotification.send("could not import " + report.getName(),
+                            ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                            NotificationType.ERROR);
+                    return;
+                }
+                // show the imported findings in the open files
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (!project.isDisposed()) {
+                        DaemonCodeAnalyzer.getInstance(project).restart();
+                    }
+                });
+            }
+        });
+    }
+}
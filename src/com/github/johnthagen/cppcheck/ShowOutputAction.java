@@ -1,31 +1,71 @@
 package com.github.johnthagen.cppcheck;
 
+import com.intellij.notification.NotificationType;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
 import com.intellij.openapi.fileEditor.FileEditorManager;
-import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
 import org.jetbrains.annotations.NotNull;
 
-import static com.github.johnthagen.cppcheck.CppcheckInspection.LATEST_RESULT_FILE;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 public class ShowOutputAction extends AnAction {
     @Override
     public void actionPerformed(@NotNull final AnActionEvent anActionEvent) {
-        final VirtualFile vFile = LocalFileSystem.getInstance().findFileByIoFile(LATEST_RESULT_FILE.toFile());
-        if (vFile == null) {
-            return;
-        }
-
         final Project project = anActionEvent.getProject();
         if (project == null) {
             return;
         }
 
-        // TODO: make it possible to view the output for the currently open file
-        // TODO: find a way to display this without writing to the file system
-        FileEditorManager.getInstance(project).openTextEditor(new OpenFileDescriptor(project, vFile), true);
+        final CppcheckOutputStore store = CppcheckOutputStore.getInstance(project);
+        try {
+            // show the output for the current editor - fall back to the latest analysis
+            String key = null;
+            String output = null;
+            final VirtualFile vFile = anActionEvent.getData(CommonDataKeys.VIRTUAL_FILE);
+            if (vFile != null) {
+                key = vFile.getPath();
+                output = store.get(key);
+            }
+            if (output == null) {
+                key = store.getLatestKey();
+                output = key != null ? store.get(key) : null;
+            }
+            if (output == null) {
+                CppcheckNotification.send("no XML output available",
+                        "No analysis has been performed yet.",
+                        NotificationType.INFORMATION);
+                return;
+            }
+
+            if (!CppcheckOutputStore.isBatchKey(key)) {
+                open(project, new File(key).getName(), output);
+                return;
+            }
+
+            // the batch analysis runs a separate invocation for each group of files sharing the same options
+            final List<String> batchKeys = store.getBatchKeys();
+            for (int i = 0; i < batchKeys.size(); ++i) {
+                final String batchOutput = store.get(batchKeys.get(i));
+                if (batchOutput != null) {
+                    open(project, batchKeys.size() > 1 ? "inspect-code-" + (i + 1) : "inspect-code", batchOutput);
+                }
+            }
+        } catch (final IOException ex) {
+            CppcheckNotification.send("could not show XML output",
+                    ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                    NotificationType.ERROR);
+        }
+    }
+
+    private static void open(@NotNull final Project project, @NotNull final String name, @NotNull final String output) {
+        final LightVirtualFile outputFile = new LightVirtualFile(name + ".cppcheck.xml", output);
+        outputFile.setWritable(false);
+        FileEditorManager.getInstance(project).openFile(outputFile, true);
     }
 }
@@ -30,6 +30,15 @@ class SupportedExtensions {
     private final static List<String> supportedHeaderExtensions = new ArrayList<>(Collections.singletonList(
             "h"));
 
+    // files which are usually only included by other files
+    private final static List<String> includedExtensions = new ArrayList<>(Arrays.asList(
+            "h",
+            "hh",
+            "hpp",
+            "hxx",
+            "tpp",
+            "txx"));
+
     public static boolean isCFamilyFile(@NotNull final VirtualFile file) {
         return isCFile(file) || isCPPFile(file) || isHeaderFile(file);
     }
@@ -56,4 +65,14 @@ class SupportedExtensions {
     public static boolean isHeaderFile(@NotNull final VirtualFile file) {
         return isFile(file, supportedHeaderExtensions);
     }
+
+    public static boolean isHeaderFile(@NotNull final String path) {
+        final String name = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+        final int dot = name.lastIndexOf('.');
+        return dot >= 0 && supportedHeaderExtensions.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    public static boolean isIncludedFile(@NotNull final VirtualFile file) {
+        return isFile(file, includedExtensions);
+    }
 }